@@ -0,0 +1,85 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.servicedirectory.config;
+
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+/**
+ * Statistics about the connection pool of the outgoing HTTP requests.
+ *
+ * @author keim
+ */
+public class HttpPoolStatistics {
+
+    private final int leased;
+    private final int available;
+    private final int pending;
+    private final int max;
+    private final int routes;
+
+    public HttpPoolStatistics(int leased, int available, int pending, int max, int routes) {
+        this.leased = leased;
+        this.available = available;
+        this.pending = pending;
+        this.max = max;
+        this.routes = routes;
+    }
+
+    public static HttpPoolStatistics of(PoolingHttpClientConnectionManager manager) {
+        var stats = manager.getTotalStats();
+        return new HttpPoolStatistics(stats.getLeased(), stats.getAvailable(), stats.getPending(), stats.getMax(), manager.getRoutes().size());
+    }
+
+    /**
+     * @return The number of connections in use.
+     */
+    public int getLeased() {
+        return leased;
+    }
+
+    /**
+     * @return The number of idle connections kept alive for reuse.
+     */
+    public int getAvailable() {
+        return available;
+    }
+
+    /**
+     * @return The number of requests waiting for a connection.
+     */
+    public int getPending() {
+        return pending;
+    }
+
+    public int getMax() {
+        return max;
+    }
+
+    /**
+     * @return The number of routes, i.e. target hosts, known to the pool.
+     */
+    public int getRoutes() {
+        return routes;
+    }
+}
@@ -25,6 +25,14 @@ package de.hsesslingen.keim.efs.servicedirectory.config;
 
 import de.hsesslingen.keim.efs.mobility.requests.DefaultRequestTemplate;
 import de.hsesslingen.keim.efs.mobility.requests.MiddlewareRequestTemplate;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -32,17 +40,90 @@ import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
 /**
+ * Configures the HTTP client used for outgoing requests, e.g. the availability
+ * checks. Connections are pooled and kept alive for reuse, and every request is
+ * bounded by timeouts, so that a hanging provider can not block a thread
+ * forever.
+ *
  * @author k.sivarasah 26 Sep 2019
  */
 @Configuration
 public class RequestConfiguration {
 
+    @Value("${service-directory.http.max-total:200}")
+    private int maxTotal;
+
+    @Value("${service-directory.http.max-per-route:20}")
+    private int maxPerRoute;
+
+    @Value("${service-directory.http.connect-timeout:PT2S}")
+    private Duration connectTimeout;
+
+    @Value("${service-directory.http.read-timeout:PT5S}")
+    private Duration readTimeout;
+
+    /**
+     * How long a request may wait for a connection of the pool.
+     */
+    @Value("${service-directory.http.connection-request-timeout:PT2S}")
+    private Duration connectionRequestTimeout;
+
+    /**
+     * How long a connection is kept alive if the server does not say so.
+     */
+    @Value("${service-directory.http.keep-alive:PT30S}")
+    private Duration keepAlive;
+
+    @Value("${service-directory.http.idle-eviction:PT30S}")
+    private Duration idleEviction;
+
+    @Value("${service-directory.http.validate-after-inactivity:PT2S}")
+    private Duration validateAfterInactivity;
+
+    @Bean
+    @ConditionalOnMissingBean
+    public PoolingHttpClientConnectionManager httpConnectionManager() {
+        var manager = new PoolingHttpClientConnectionManager();
+        manager.setMaxTotal(maxTotal);
+        manager.setDefaultMaxPerRoute(maxPerRoute);
+        manager.setValidateAfterInactivity(toMillis(validateAfterInactivity));
+        return manager;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public CloseableHttpClient httpClient(PoolingHttpClientConnectionManager connectionManager) {
+        var requestConfig = RequestConfig.custom()
+                .setConnectTimeout(toMillis(connectTimeout))
+                .setSocketTimeout(toMillis(readTimeout))
+                .setConnectionRequestTimeout(toMillis(connectionRequestTimeout))
+                .build();
+
+        var keepAliveMillis = keepAlive.toMillis();
+
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy((response, context) -> {
+                    // Honors the Keep-Alive header of the server, but never beyond the configured duration.
+                    var duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return duration > 0 ? Math.min(duration, keepAliveMillis) : keepAliveMillis;
+                })
+                .evictExpiredConnections()
+                .evictIdleConnections(idleEviction.toMillis(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
     @Bean
     @ConditionalOnMissingBean
-    public MiddlewareRequestTemplate requestTemplate() {
+    public MiddlewareRequestTemplate requestTemplate(CloseableHttpClient httpClient) {
         var template = new RestTemplate();
-        template.setRequestFactory(new HttpComponentsClientHttpRequestFactory());
+        template.setRequestFactory(new HttpComponentsClientHttpRequestFactory(httpClient));
         return new DefaultRequestTemplate(template);
     }
 
+    private static int toMillis(Duration duration) {
+        return (int) Math.min(Integer.MAX_VALUE, duration.toMillis());
+    }
+
 }
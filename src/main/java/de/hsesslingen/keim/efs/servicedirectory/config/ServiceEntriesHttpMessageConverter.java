@@ -0,0 +1,109 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.servicedirectory.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.hsesslingen.keim.efs.servicedirectory.core.ServiceEntries;
+import java.io.IOException;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+/**
+ * Writes {@link ServiceEntries} response bodies by copying the cached JSON of
+ * the entries straight into the response stream, without serializing the
+ * services again.
+ *
+ * @author keim
+ */
+public class ServiceEntriesHttpMessageConverter extends AbstractHttpMessageConverter<ServiceEntries> {
+
+    private static final byte[] ARRAY_START = {'['};
+    private static final byte[] ARRAY_END = {']'};
+    private static final byte[] SEPARATOR = {','};
+
+    private final ObjectMapper mapper;
+
+    public ServiceEntriesHttpMessageConverter(ObjectMapper mapper) {
+        super(MediaType.APPLICATION_JSON);
+        this.mapper = mapper;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return ServiceEntries.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected ServiceEntries readInternal(Class<? extends ServiceEntries> clazz, HttpInputMessage inputMessage) throws IOException, HttpMessageNotReadableException {
+        throw new HttpMessageNotReadableException("Reading " + clazz.getName() + " is not supported.", inputMessage);
+    }
+
+    @Override
+    protected Long getContentLength(ServiceEntries body, MediaType contentType) throws IOException {
+        // The same arrays are written later, so the length always matches the body.
+        var json = json(body);
+        long length = ARRAY_START.length + ARRAY_END.length + Math.max(0, json.length - 1) * SEPARATOR.length;
+
+        for (var bytes : json) {
+            length += bytes.length;
+        }
+
+        return length;
+    }
+
+    @Override
+    protected void writeInternal(ServiceEntries body, HttpOutputMessage outputMessage) throws IOException, HttpMessageNotWritableException {
+        var out = outputMessage.getBody();
+        var json = json(body);
+
+        out.write(ARRAY_START);
+
+        for (int i = 0; i < json.length; i++) {
+            if (i > 0) {
+                out.write(SEPARATOR);
+            }
+            out.write(json[i]);
+        }
+
+        out.write(ARRAY_END);
+    }
+
+    private byte[][] json(ServiceEntries entries) {
+        try {
+            return entries.getJson(mapper);
+        } catch (JsonProcessingException ex) {
+            throw new HttpMessageNotWritableException("Could not write JSON of services", ex);
+        }
+    }
+}
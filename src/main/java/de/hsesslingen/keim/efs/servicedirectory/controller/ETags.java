@@ -0,0 +1,56 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.servicedirectory.controller;
+
+import de.hsesslingen.keim.efs.servicedirectory.core.RegistrySnapshot;
+import de.hsesslingen.keim.efs.servicedirectory.core.SearchQuery;
+import java.security.SecureRandom;
+
+/**
+ * Creates the ETags of the responses of the service directory. They are
+ * derived from the version of the registry snapshot, which changes with every
+ * change of the registered services or their activity.
+ * <p>
+ * Versions start all over again when the service directory restarts and are
+ * not shared between instances, so each tag also contains a random epoch
+ * chosen once per boot. Tags of another boot or instance therefore never
+ * match.
+ *
+ * @author keim
+ */
+class ETags {
+
+    private static final String EPOCH = Long.toHexString(new SecureRandom().nextLong());
+
+    private ETags() {
+    }
+
+    static String of(RegistrySnapshot snapshot) {
+        return "\"" + EPOCH + "-" + Long.toHexString(snapshot.getVersion()) + "\"";
+    }
+
+    static String of(RegistrySnapshot snapshot, SearchQuery query) {
+        return "\"" + EPOCH + "-" + Long.toHexString(snapshot.getVersion()) + "-" + Integer.toHexString(query.hashCode()) + "\"";
+    }
+}
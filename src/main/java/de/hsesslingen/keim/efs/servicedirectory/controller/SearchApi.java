@@ -27,22 +27,25 @@ import java.util.List;
 import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
-import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import de.hsesslingen.keim.efs.mobility.config.EfsSwaggerApiResponseSupport;
 import de.hsesslingen.keim.efs.mobility.service.MobilityService;
 import de.hsesslingen.keim.efs.mobility.service.MobilityService.API;
 import de.hsesslingen.keim.efs.mobility.service.Mode;
 import de.hsesslingen.keim.efs.servicedirectory.core.MobilityServiceFinder;
+import de.hsesslingen.keim.efs.servicedirectory.core.MobilityServiceRegistry;
+import de.hsesslingen.keim.efs.servicedirectory.core.SearchQuery;
+import de.hsesslingen.keim.efs.servicedirectory.core.ServiceEntries;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
+import springfox.documentation.annotations.ApiIgnore;
 
 /**
  * Rest API to search for Services
@@ -58,9 +61,14 @@ public class SearchApi {
     @Autowired
     private MobilityServiceFinder finder;
 
+    @Autowired
+    private MobilityServiceRegistry registry;
+
+    // No @ResponseStatus here, because it would overwrite the status 304 of conditional requests.
     @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
-    @ResponseStatus(HttpStatus.OK)
-    @ApiOperation(value = "Search for Services", notes = "Searches for available service using the provided search-criteria.")
+    @ApiOperation(value = "Search for Services", notes = "Searches for available service using the provided search-criteria. "
+            + "Supports conditional requests using the returned ETag.",
+            response = MobilityService.class, responseContainer = "List")
     public List<MobilityService> search(
             @ApiParam("Returns only this services, that support at least one of the given modes.")
             @RequestParam(required = false, defaultValue = "") Set<Mode> modes,
@@ -72,8 +80,34 @@ public class SearchApi {
             @RequestParam(required = false, defaultValue = "true") boolean excludeInactive,
             //
             @ApiParam("Returns only services, whose ID is given in this list.")
-            @RequestParam(required = false, defaultValue = "") Set<String> serviceIds
+            @RequestParam(required = false, defaultValue = "") Set<String> serviceIds,
+            //
+            @ApiParam("Returns only services, whose average round-trip time of availability checks is at most this many milliseconds.")
+            @RequestParam(required = false) Long maxLatencyMs,
+            //
+            @ApiParam("Sorts the services by the average round-trip time of their availability checks, fastest first.")
+            @RequestParam(required = false, defaultValue = "false") boolean sortByLatency,
+            //
+            @ApiParam("Returns only services, whose availability was confirmed at most this many milliseconds ago.")
+            @RequestParam(required = false) Long maxStalenessMs,
+            //
+            @ApiIgnore WebRequest request
     ) {
-        return finder.search(modes, apis, excludeInactive, serviceIds);
+        var query = new SearchQuery(modes, apis, excludeInactive, serviceIds);
+
+        if (maxLatencyMs != null || sortByLatency || maxStalenessMs != null) {
+            // Round-trip times and states change without a new snapshot, so there is no ETag for these.
+            return ServiceEntries.of(finder.searchByHealth(query, maxLatencyMs, sortByLatency, maxStalenessMs));
+        }
+
+        var snapshot = registry.getSnapshot();
+
+        // Answer unchanged results before running the search at all.
+        if (request.checkNotModified(ETags.of(snapshot, query))) {
+            finder.countNotModified(query, snapshot.getVersion());
+            return null;
+        }
+
+        return ServiceEntries.of(finder.search(query).getEntries());
     }
 }
@@ -35,14 +35,20 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import de.hsesslingen.keim.efs.mobility.config.EfsSwaggerApiResponseSupport;
 import de.hsesslingen.keim.efs.mobility.service.MobilityService;
+import de.hsesslingen.keim.efs.servicedirectory.core.ChangeFeed;
 import de.hsesslingen.keim.efs.servicedirectory.core.MobilityServiceRegistry;
+import de.hsesslingen.keim.efs.servicedirectory.core.ServiceEntries;
+import de.hsesslingen.keim.efs.servicedirectory.core.ServiceStatus;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
 import java.util.Collection;
 import springfox.documentation.annotations.ApiIgnore;
 
@@ -60,18 +66,51 @@ public class ServiceApi {
     @Autowired
     private MobilityServiceRegistry registry;
 
+    // No @ResponseStatus here, because it would overwrite the status 304 of conditional requests.
     @GetMapping
+    @ApiOperation(value = "Get all Services", notes = "Returns all registered services, regardless of their current status (up/down). "
+            + "Supports conditional requests using the returned ETag.",
+            response = MobilityService.class, responseContainer = "List")
+    public Collection<MobilityService> getAll(@ApiIgnore WebRequest request) {
+        var snapshot = registry.getSnapshot();
+
+        if (request.checkNotModified(ETags.of(snapshot))) {
+            return null;
+        }
+
+        return ServiceEntries.of(snapshot.getEntries());
+    }
+
+    @GetMapping("/changes")
     @ResponseStatus(HttpStatus.OK)
-    @ApiOperation(value = "Get all Services", notes = "Returns all registered services, regardless of their current status (up/down)")
-    public Collection<MobilityService> getAll() {
-        return registry.getAll();
+    @ApiOperation(value = "Get changes", notes = "Returns the registrations, updates, deletions and activity changes of services "
+            + "since the given sequence number. If these changes are no longer available or the given epoch does not match, "
+            + "a full resync is required.")
+    public ChangeFeed getChanges(
+            @ApiParam("The sequence number of the last change known to the client.")
+            @RequestParam(required = false, defaultValue = "0") long since,
+            //
+            @ApiParam("The epoch of the feed the sequence number was taken from. It changes when the service directory restarts.")
+            @RequestParam(required = false) Long epoch
+    ) {
+        return registry.getChangesSince(epoch, since);
     }
 
     @GetMapping("/{id}")
     @ResponseStatus(HttpStatus.OK)
-    @ApiOperation(value = "Get Service by id", notes = "Returns the service with the specific id, regardless of its current status (up/down)")
+    @ApiOperation(value = "Get Service by id", notes = "Returns the service with the specific id, regardless of its current status (up/down). "
+            + "The case of the id is ignored, if there is no service with exactly this id.",
+            response = MobilityService.class)
     public MobilityService getServiceById(@PathVariable String id) {
-        return registry.getById(id);
+        return registry.getByIdIgnoreCase(id);
+    }
+
+    @GetMapping("/{id}/status")
+    @ResponseStatus(HttpStatus.OK)
+    @ApiOperation(value = "Get status of Service", notes = "Returns the availability checking status of the service with the specific id, "
+            + "including the state of its circuit breaker.")
+    public ServiceStatus getServiceStatus(@PathVariable String id) {
+        return ServiceStatus.of(registry.getEntryByIdIgnoreCase(id));
     }
 
     @ApiIgnore
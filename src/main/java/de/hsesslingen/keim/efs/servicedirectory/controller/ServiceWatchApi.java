@@ -0,0 +1,146 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.servicedirectory.controller;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import de.hsesslingen.keim.efs.mobility.config.EfsSwaggerApiResponseSupport;
+import de.hsesslingen.keim.efs.mobility.service.MobilityService.API;
+import de.hsesslingen.keim.efs.mobility.service.Mode;
+import de.hsesslingen.keim.efs.servicedirectory.core.ChangeBroadcaster;
+import de.hsesslingen.keim.efs.servicedirectory.core.ChangeFeed;
+import de.hsesslingen.keim.efs.servicedirectory.core.MobilityServiceRegistry;
+import de.hsesslingen.keim.efs.servicedirectory.core.SearchQuery;
+import de.hsesslingen.keim.efs.servicedirectory.core.ServiceChange;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+
+/**
+ * Rest API to watch the changes of the registered services using Server-Sent
+ * Events.
+ * <p>
+ * Every event carries the sequence number of the change as its id and the type
+ * of the change as its name. The first event is named "sequence" and carries
+ * the epoch and sequence number at subscription time, from which clients may
+ * resume using {@code /api/services/changes}. A "resync" event tells the client
+ * that changes were dropped, because it did not keep up, and carries the epoch
+ * and sequence number to resync from. Both are sent as a {@link ChangeFeed}
+ * without changes. Clients whose events
+ * cannot be sent in time are disconnected, and new clients are refused with
+ * status 503 while too many are watching.
+ *
+ * @author keim
+ */
+@RestController
+@RequestMapping("/api/services/watch")
+@Api(tags = "Service Api")
+@EfsSwaggerApiResponseSupport
+public class ServiceWatchApi {
+
+    @Autowired
+    private MobilityServiceRegistry registry;
+
+    @Autowired
+    private ChangeBroadcaster broadcaster;
+
+    @Value("${service-directory.watch.timeout:PT30M}")
+    private Duration timeout;
+
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ApiOperation(value = "Watch the registered services", notes = "Streams the registrations, updates, deletions and activity changes "
+            + "of services as Server-Sent Events.")
+    public SseEmitter watch(
+            @ApiParam("Streams only changes of services, that support at least one of the given modes.")
+            @RequestParam(required = false, defaultValue = "") Set<Mode> modes,
+            //
+            @ApiParam("Streams only changes of services, that support ALL of the given APIs.")
+            @RequestParam(required = false, defaultValue = "") Set<API> apis,
+            //
+            @ApiParam("Streams only changes of services, whose ID is given in this list.")
+            @RequestParam(required = false, defaultValue = "") Set<String> serviceIds
+    ) throws IOException {
+        var emitter = new SseEmitter(timeout.toMillis());
+
+        // Subscribe before reading the sequence, so that no change falls between both.
+        var subscription = broadcaster.subscribe(new SearchQuery(modes, apis, false, serviceIds), new ChangeBroadcaster.Sink() {
+            @Override
+            public void send(ServiceChange change) throws IOException {
+                emitter.send(SseEmitter.event()
+                        .id(Long.toString(change.getSequence()))
+                        .name(change.getType().name())
+                        .data(change, MediaType.APPLICATION_JSON));
+            }
+
+            @Override
+            public void resync(long epoch, long sequence) throws IOException {
+                emitter.send(SseEmitter.event()
+                        .id(Long.toString(sequence))
+                        .name("resync")
+                        .data(new ChangeFeed(epoch, sequence, true, List.of()), MediaType.APPLICATION_JSON));
+            }
+
+            @Override
+            public void close() {
+                emitter.complete();
+            }
+        });
+
+        if (subscription == null) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many clients are watching the registered services.");
+        }
+
+        emitter.onCompletion(subscription::cancel);
+        emitter.onTimeout(subscription::cancel);
+        emitter.onError(ex -> subscription.cancel());
+
+        var sequence = registry.getSequence();
+
+        try {
+            emitter.send(SseEmitter.event()
+                    .id(Long.toString(sequence))
+                    .name("sequence")
+                    .data(new ChangeFeed(registry.getEpoch(), sequence, false, List.of()), MediaType.APPLICATION_JSON));
+        } catch (IOException ex) {
+            subscription.cancel();
+            throw ex;
+        }
+
+        return emitter;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.servicedirectory.controller;
+
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+import static de.hsesslingen.keim.efs.mobility.exception.HttpException.notFound;
+import de.hsesslingen.keim.efs.mobility.config.EfsSwaggerApiResponseSupport;
+import de.hsesslingen.keim.efs.servicedirectory.config.HttpPoolStatistics;
+import de.hsesslingen.keim.efs.servicedirectory.core.AvailabilityChecker;
+import de.hsesslingen.keim.efs.servicedirectory.core.ChangeBroadcaster;
+import de.hsesslingen.keim.efs.servicedirectory.core.CycleStatistics;
+import de.hsesslingen.keim.efs.servicedirectory.core.MobilityServiceFinder;
+import de.hsesslingen.keim.efs.servicedirectory.core.ProbeDispatcher;
+import de.hsesslingen.keim.efs.servicedirectory.core.SearchCache;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+
+/**
+ * Rest API with runtime statistics of the service directory for operators.
+ *
+ * @author keim
+ */
+@RestController
+@RequestMapping(value = "/api/statistics", produces = MediaType.APPLICATION_JSON_VALUE)
+@Api(tags = "Statistics Api")
+@EfsSwaggerApiResponseSupport
+public class StatisticsApi {
+
+    @Autowired
+    private MobilityServiceFinder finder;
+
+    @Autowired
+    private ChangeBroadcaster broadcaster;
+
+    // The availability checker is optional for applications using this plugin.
+    @Autowired(required = false)
+    private AvailabilityChecker checker;
+
+    @Autowired(required = false)
+    private PoolingHttpClientConnectionManager httpConnectionManager;
+
+    @GetMapping("/search-cache")
+    @ResponseStatus(HttpStatus.OK)
+    @ApiOperation(value = "Get search cache statistics", notes = "Returns the size, hits, misses and evictions of the search result cache.")
+    public SearchCache.Statistics getSearchCacheStatistics() {
+        return finder.getCacheStatistics();
+    }
+
+    @GetMapping("/watch")
+    @ResponseStatus(HttpStatus.OK)
+    @ApiOperation(value = "Get watch statistics", notes = "Returns the number of watching clients and how often they had to resync.")
+    public ChangeBroadcaster.Statistics getWatchStatistics() {
+        return broadcaster.getStatistics();
+    }
+
+    @GetMapping("/availability-checker")
+    @ResponseStatus(HttpStatus.OK)
+    @ApiOperation(value = "Get availability checker statistics", notes = "Returns the number of availability checks in flight and the backlog of waiting checks.")
+    public ProbeDispatcher.Statistics getAvailabilityCheckerStatistics() {
+        if (checker == null) {
+            throw notFound("The availability checker is not enabled.");
+        }
+
+        return checker.getStatistics();
+    }
+
+    @GetMapping("/availability-checker/cycles")
+    @ResponseStatus(HttpStatus.OK)
+    @ApiOperation(value = "Get availability checking cycle statistics", notes = "Returns how long the checking cycles took and how many due checks they carried over.")
+    public CycleStatistics getCycleStatistics() {
+        if (checker == null) {
+            throw notFound("The availability checker is not enabled.");
+        }
+
+        return checker.getCycleStatistics();
+    }
+
+    @GetMapping("/http-pool")
+    @ResponseStatus(HttpStatus.OK)
+    @ApiOperation(value = "Get HTTP connection pool statistics", notes = "Returns the leased, available and pending connections of the pool used for outgoing requests.")
+    public HttpPoolStatistics getHttpPoolStatistics() {
+        if (httpConnectionManager == null) {
+            throw notFound("No pooled HTTP client is configured.");
+        }
+
+        return HttpPoolStatistics.of(httpConnectionManager);
+    }
+}
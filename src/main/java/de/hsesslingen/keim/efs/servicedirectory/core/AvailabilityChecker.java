@@ -26,22 +26,87 @@ package de.hsesslingen.keim.efs.servicedirectory.core;
 import de.hsesslingen.keim.efs.mobility.service.MobilityService;
 import de.hsesslingen.keim.efs.mobility.requests.MiddlewareRequest;
 import de.hsesslingen.keim.efs.mobility.requests.MiddlewareRequestTemplate;
-import de.hsesslingen.keim.efs.servicedirectory.core.MobilityServiceRegistry.ActivityState;
 import java.time.Duration;
-import java.time.Instant;
-import static java.util.stream.Collectors.toList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import javax.annotation.PostConstruct;
-import org.apache.commons.lang3.tuple.Triple;
+import javax.annotation.PreDestroy;
+import javax.validation.Validator;
+import static org.apache.commons.lang3.StringUtils.isBlank;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientResponseException;
 
 /**
  * This class checks the registered services periodically for availability.
+ * <p>
+ * The checks are sent off asynchronously on a dedicated executor, so that a
+ * checking cycle returns immediately and slow services can not delay the next
+ * cycle. At most "max-in-flight" checks run at the same time and at most
+ * "max-in-flight-per-host" of them against the same host. All others wait in
+ * the {@link ProbeDispatcher}. A service is never checked again while its
+ * previous check is still in flight.
+ * <p>
+ * The services are kept in a {@link CheckSchedule} ordered by the point in
+ * time at which their state expires, so that each cycle only touches the
+ * services that are actually due. A service is rescheduled when its check
+ * completes and whenever it is registered, updated or its state is changed.
+ * Deleted services are dropped once they come up in the schedule.
+ * <p>
+ * How often a service is checked adapts to its behaviour, see
+ * {@link CheckIntervalPolicy}. The "state-valid-duration" is the base interval
+ * used for services that were not checked yet.
+ * <p>
+ * Each service has a {@link CircuitBreaker}. While it is open, the service is
+ * skipped without sending any request, so that unreachable services do not
+ * tie up the checks in flight with their connection timeouts.
+ * <p>
+ * A single failed or successful check does not flip the "active" flag of a
+ * service, see {@link FlapDamper}. Until a pending flip is confirmed, the
+ * service is checked again after the minimum interval.
+ * <p>
+ * The round-trip time of every check that got an answer is recorded in the
+ * {@link LatencyStats} of the service.
+ * <p>
+ * By default, the checks are conditional requests, which send the validators
+ * of the previous response of the service. An answer "304 Not Modified" counts
+ * as available and carries no body to parse. See {@link ProbeMode} for the
+ * alternatives.
+ * <p>
+ * If a check returns a service info that differs from the registered one, the
+ * registered service is refreshed with it, see
+ * {@link MobilityServiceRegistry#refresh(ServiceEntry, MobilityService)}.
+ * <p>
+ * The checks follow the search demand of the services, see
+ * {@link DemandCounter}. Hot services are checked more often, cold ones less
+ * often. If more services are due than the "probe-budget" allows per cycle,
+ * the hottest are checked first and the rest waits for the next cycle.
+ * <p>
+ * Services with an overdue check that are returned by searches are re-checked
+ * first by the next cycle, ahead of the other due services, see
+ * {@link MobilityServiceFinder#setRevalidator}.
+ * <p>
+ * Cycles never overlap: a scheduled run that falls into a running cycle is
+ * merged into it, i.e. the running cycle polls the due services once more
+ * before it ends. Each cycle has a wall-clock budget and stops starting checks
+ * once the checks waiting in the dispatcher reach "max-queued-checks". The
+ * due services left over are carried over to the next cycle.
  *
  * @author keim
  */
@@ -52,6 +117,26 @@ public class AvailabilityChecker {
 
     private static final String SERVICE_INFO_PATH = "/service-info";
 
+    /**
+     * How the availability of a service is checked.
+     */
+    public enum ProbeMode {
+        /**
+         * Fetches the complete service info, which must have a body.
+         */
+        FULL,
+        /**
+         * Like {@link #FULL}, but sends the validators of the previous
+         * response along, so that unchanged service infos are answered with
+         * "304 Not Modified" and no body.
+         */
+        CONDITIONAL,
+        /**
+         * Only looks at the status code and discards the body unparsed.
+         */
+        STATUS_ONLY
+    }
+
     @Autowired
     private MobilityServiceRegistry registry;
 
@@ -61,74 +146,589 @@ public class AvailabilityChecker {
     @Value("${service-directory.availability-checker.checking-rate:10000}")
     private int checkingRate;
 
+    @Value("${service-directory.availability-checker.max-in-flight:64}")
+    private int maxInFlight;
+
+    @Value("${service-directory.availability-checker.max-in-flight-per-host:4}")
+    private int maxInFlightPerHost;
+
+    @Value("${service-directory.availability-checker.thread-keep-alive:PT1M}")
+    private Duration threadKeepAlive;
+
+    @Value("${service-directory.availability-checker.min-check-interval:PT10S}")
+    private Duration minCheckInterval;
+
+    @Value("${service-directory.availability-checker.max-check-interval:PT5M}")
+    private Duration maxCheckInterval;
+
+    @Value("${service-directory.availability-checker.check-interval-backoff:1.5}")
+    private double checkIntervalBackoff;
+
+    @Value("${service-directory.availability-checker.check-interval-jitter:0.1}")
+    private double checkIntervalJitter;
+
+    @Value("${service-directory.availability-checker.circuit-breaker.failure-threshold:3}")
+    private int failureThreshold;
+
+    @Value("${service-directory.availability-checker.circuit-breaker.open-duration:PT2M}")
+    private Duration openDuration;
+
+    @Value("${service-directory.availability-checker.flap-damping.failures-to-deactivate:2}")
+    private int failuresToDeactivate;
+
+    @Value("${service-directory.availability-checker.flap-damping.successes-to-activate:2}")
+    private int successesToActivate;
+
+    @Value("${service-directory.availability-checker.flap-damping.penalty-half-life:PT15M}")
+    private Duration penaltyHalfLife;
+
+    @Value("${service-directory.availability-checker.flap-damping.suppress-threshold:0}")
+    private double suppressThreshold;
+
+    @Value("${service-directory.availability-checker.latency-ewma-weight:0.2}")
+    private double latencyEwmaWeight;
+
+    @Value("${service-directory.availability-checker.probe-mode:CONDITIONAL}")
+    private ProbeMode probeMode;
+
+    @Value("${service-directory.availability-checker.demand.half-life:PT10M}")
+    private Duration demandHalfLife;
+
+    @Value("${service-directory.availability-checker.demand.hot-threshold:100}")
+    private double hotDemand;
+
+    @Value("${service-directory.availability-checker.demand.cold-factor:2}")
+    private double coldFactor;
+
+    /**
+     * The maximum number of checks started per cycle, including the
+     * revalidations requested since the previous cycle. 0 for no limit.
+     */
+    @Value("${service-directory.availability-checker.probe-budget:0}")
+    private int probeBudget;
+
+    @Value("${service-directory.availability-checker.cycle-budget:PT5S}")
+    private Duration cycleBudget;
+
+    /**
+     * The number of checks waiting in the dispatcher, from which a cycle
+     * starts no more checks. 0 for no limit.
+     */
+    @Value("${service-directory.availability-checker.max-queued-checks:1000}")
+    private int maxQueuedChecks;
+
+    private long stateValidMillis;
+    private long cycleBudgetNanos;
+
+    private final AtomicBoolean cycleRunning = new AtomicBoolean();
+    private final AtomicBoolean cycleRequested = new AtomicBoolean();
+
+    /**
+     * The number of revalidations requested since the last cycle, which count
+     * against the probe budget of the next one.
+     */
+    private final AtomicInteger revalidations = new AtomicInteger();
+    private final ConcurrentLinkedQueue<ServiceEntry> revalidationQueue = new ConcurrentLinkedQueue<>();
+    private final CycleStatistics.Recorder cycleStatistics = new CycleStatistics.Recorder();
+    private long demandHalfLifeMillis;
+
+    private FlapDamper.Policy flapDamping;
+
+    private CheckIntervalPolicy intervals;
+
+    private ExecutorService probeExecutor;
+    private ProbeDispatcher dispatcher;
+
+    private final CheckSchedule schedule = new CheckSchedule();
+    private final Consumer<ServiceChange> changeListener = this::serviceChanged;
+
     @Autowired
     private MiddlewareRequestTemplate rt;
 
+    /**
+     * Validates service infos like the API validates registrations.
+     */
+    @Autowired
+    private Validator validator;
+
+    @Autowired(required = false)
+    private MobilityServiceFinder finder;
+
     @PostConstruct
     public void init() {
         if (stateValidDuration == null) {
             throw new IllegalArgumentException("The value in configuration property \"service-directory.availability-checker.state-valid-duration\" could not be parsed to a Duration.");
         }
 
-        var stateValidMillis = stateValidDuration.toMillis();
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("The value in configuration property \"service-directory.availability-checker.max-in-flight\" must be at least 1.");
+        }
+
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("The value in configuration property \"service-directory.availability-checker.circuit-breaker.failure-threshold\" must be at least 1.");
+        }
+
+        if (latencyEwmaWeight <= 0 || latencyEwmaWeight > 1) {
+            throw new IllegalArgumentException("The value in configuration property \"service-directory.availability-checker.latency-ewma-weight\" must be greater than 0 and at most 1.");
+        }
+
+        if (probeBudget < 0) {
+            throw new IllegalArgumentException("The value in configuration property \"service-directory.availability-checker.probe-budget\" must not be negative.");
+        }
+
+        if (maxQueuedChecks < 0) {
+            throw new IllegalArgumentException("The value in configuration property \"service-directory.availability-checker.max-queued-checks\" must not be negative.");
+        }
+
+        if (cycleBudget == null || cycleBudget.isNegative() || cycleBudget.isZero()) {
+            throw new IllegalArgumentException("The value in configuration property \"service-directory.availability-checker.cycle-budget\" must be positive.");
+        }
+
+        if (maxInFlightPerHost < 1) {
+            throw new IllegalArgumentException("The value in configuration property \"service-directory.availability-checker.max-in-flight-per-host\" must be at least 1.");
+        }
+
+        stateValidMillis = stateValidDuration.toMillis();
+        cycleBudgetNanos = cycleBudget.toNanos();
 
         if (checkingRate > stateValidMillis) {
             logger.warn("The configured duration of milliseconds for \"service-directory.availability-checker.checking-rate\" is bigger that the configured duration for \"service-directory.availability-checker.state-valid-duration\". It is better to use a smaller duration for the first one than for the last one because this makes sure that invalid service states will be rechecked at latest after their doubled valid-duration.");
         }
+
+        intervals = new CheckIntervalPolicy(
+                Math.min(minCheckInterval.toMillis(), stateValidMillis),
+                stateValidMillis,
+                Math.max(maxCheckInterval.toMillis(), stateValidMillis),
+                checkIntervalBackoff,
+                checkIntervalJitter,
+                hotDemand,
+                coldFactor
+        );
+
+        demandHalfLifeMillis = demandHalfLife.toMillis();
+
+        if (demandHalfLifeMillis <= 0) {
+            throw new IllegalArgumentException("The value in configuration property \"service-directory.availability-checker.demand.half-life\" must be positive.");
+        }
+
+        flapDamping = new FlapDamper.Policy(failuresToDeactivate, successesToActivate, penaltyHalfLife.toMillis(), suppressThreshold);
+
+        var threadCount = new AtomicInteger();
+
+        // The requests are blocking, so every check in flight needs its own thread.
+        var executor = new ThreadPoolExecutor(maxInFlight, maxInFlight, threadKeepAlive.toMillis(), TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            var thread = new Thread(runnable, "availability-checker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+
+        probeExecutor = executor;
+        dispatcher = new ProbeDispatcher(executor, maxInFlight, maxInFlightPerHost);
+
+        if (finder != null) {
+            finder.setRevalidator(this::revalidate);
+        }
+
+        // Listen first, so that no registration falls between both.
+        registry.addChangeListener(changeListener);
+        registry.streamEntries().forEach(this::reschedule);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (finder != null) {
+            finder.setRevalidator(null);
+        }
+
+        registry.removeChangeListener(changeListener);
+        probeExecutor.shutdownNow();
     }
 
     @Scheduled(fixedRateString = "${service-directory.availability-checker.checking-rate:10000}")
     public void checkAlmostDueMobilityServices() {
+        // Request first, so that a running cycle either sees the request or has already released the cycle.
+        cycleRequested.set(true);
+
+        if (!cycleRunning.compareAndSet(false, true)) {
+            // Merges this run into the running cycle instead of overlapping it.
+            cycleStatistics.merged();
+            logger.debug("Merging the availability check into the still running cycle.");
+            return;
+        }
+
+        // Runs requested after the cycle last looked for them, but before it was released, would be lost otherwise.
+        do {
+            runCycle();
+        } while (cycleRequested.get() && cycleRunning.compareAndSet(false, true));
+    }
+
+    /**
+     * Runs one cycle, including the runs merged into it, and releases it. All
+     * of them share the budgets of the cycle.
+     */
+    private void runCycle() {
         logger.debug("Checking availability of mobility services... (Only those that are due.)");
 
-        var requests = registry.streamServiceStates()
-                // Filter out those services that are NOT due for checking...
-                .filter(pair -> isDueForChecking(pair.getRight()))
-                // Add a preconfigured request to the pair (which makes it a Triple).
-                // This needs to be done, because the outgoing request adapters of each request must 
-                // be called from the main thread, because they might rely on ThreadLocal storage.
-                .map(pair -> Triple.of(pair.getLeft(), pair.getRight(), createServiceInfoRequest(pair.getLeft())))
-                .collect(toList());
-
-        // Send off the actual availability checking requests...
-        requests.parallelStream()
-                .forEach(triple -> {
-                    var request = triple.getRight();
-                    var state = triple.getMiddle();
-                    checkServiceAvailability(request, state);
-                });
+        var started = System.nanoTime();
+        var counts = new int[2];
+
+        try {
+            boolean withinBudget;
+
+            do {
+                cycleRequested.set(false);
+                withinBudget = checkDueServices(started, counts);
+            } while (withinBudget && cycleRequested.get());
+
+            if (!withinBudget) {
+                // The runs merged into an exhausted cycle are carried over along with its due checks.
+                cycleRequested.set(false);
+            }
+        } finally {
+            cycleRunning.set(false);
+            cycleStatistics.finished(System.nanoTime() - started, counts[0], counts[1]);
+        }
+
+        if (counts[1] > 0) {
+            logger.debug("Carried {} due checks over to the next cycle.", counts[1]);
+        }
+    }
+
+    /**
+     * Starts the checks of the services that are due now, within the budgets
+     * of the cycle.
+     *
+     * @param cycleStarted The start of the cycle in nanos.
+     * @param counts Accumulates the number of started checks at index 0 and
+     * the number of checks carried over at index 1. The started checks count
+     * against the probe budget of the whole cycle.
+     * @return Whether the cycle has budget left.
+     */
+    private boolean checkDueServices(long cycleStarted, int[] counts) {
+        if (finder != null) {
+            finder.spreadDemand();
+        }
+
+        var now = System.currentTimeMillis();
+        var due = schedule.pollDue(now);
+
+        counts[0] += startRevalidations(now);
+        var budget = Math.max(0, probeBudget - counts[0]);
+
+        if (probeBudget > 0 && due.size() > budget) {
+            // Check the services most in demand first, the others wait for the next cycle.
+            var demands = new IdentityHashMap<ServiceEntry, Double>();
+            due.forEach(entry -> demands.put(entry, entry.getDemand().getScore(now, demandHalfLifeMillis)));
+            due.sort(Comparator.comparing(demands::get, Comparator.reverseOrder()));
+
+            counts[1] += carryOver(due.subList(budget, due.size()), now);
+            due = due.subList(0, budget);
+        }
+
+        for (int i = 0; i < due.size(); i++) {
+            if (isOverBudget(cycleStarted)) {
+                counts[1] += carryOver(due.subList(i, due.size()), now);
+                return false;
+            }
+
+            var entry = due.get(i);
+
+            // Skip services that got deleted meanwhile or are still being checked.
+            // Those being checked get rescheduled once their check completes.
+            if (isRegistered(entry) && entry.tryStartProbe()) {
+                startCheck(entry, now);
+                counts[0]++;
+            }
+        }
+
+        return !isOverBudget(cycleStarted) && (probeBudget == 0 || counts[0] < probeBudget);
+    }
+
+    private boolean isOverBudget(long cycleStarted) {
+        return System.nanoTime() - cycleStarted > cycleBudgetNanos
+                || (maxQueuedChecks > 0 && dispatcher.getQueued() >= maxQueuedChecks);
     }
 
-    private boolean isDueForChecking(ActivityState state) {
-        return state.getLastUpdate().plus(stateValidDuration).isBefore(Instant.now());
+    private int carryOver(List<ServiceEntry> entries, long now) {
+        for (var entry : entries) {
+            schedule.schedule(entry, now);
+        }
+
+        return entries.size();
+    }
+
+    /**
+     * @return Statistics about the checking cycles.
+     */
+    public CycleStatistics getCycleStatistics() {
+        return cycleStatistics.toStatistics();
+    }
+
+    /**
+     * Queues the given service to be checked first by the next cycle, unless
+     * a check of it is already in flight. The requests are created by the
+     * cycle, like all others. Revalidations count against the probe budget of
+     * the next cycle and are skipped while the budget or the queue of the
+     * dispatcher is exhausted. The skipped services are checked by the cycles
+     * as scheduled.
+     *
+     * @param entry
+     */
+    private void revalidate(ServiceEntry entry) {
+        if (probeBudget > 0 && revalidations.get() >= probeBudget) {
+            return;
+        }
+
+        if (maxQueuedChecks > 0 && dispatcher.getQueued() >= maxQueuedChecks) {
+            return;
+        }
+
+        if (!entry.tryStartProbe()) {
+            return;
+        }
+
+        revalidations.incrementAndGet();
+        revalidationQueue.add(entry);
+    }
+
+    /**
+     * Starts the checks of the queued revalidations.
+     *
+     * @return The number of revalidations taken from the queue.
+     */
+    private int startRevalidations(long now) {
+        var count = 0;
+        ServiceEntry entry;
+
+        while ((entry = revalidationQueue.poll()) != null) {
+            revalidations.decrementAndGet();
+            count++;
+
+            // Already claimed by revalidate().
+            if (isRegistered(entry)) {
+                startCheck(entry, now);
+            } else {
+                entry.finishProbe();
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Starts the check of an entry that is already claimed by
+     * {@link ServiceEntry#tryStartProbe()}, unless its circuit breaker is
+     * open.
+     */
+    private void startCheck(ServiceEntry entry, long now) {
+        if (entry.getCircuitBreaker().tryAcquire(now)) {
+            checkServiceAvailability(entry);
+        } else {
+            entry.finishProbe();
+            reschedule(entry);
+        }
+    }
 
+    /**
+     * @return Statistics about the checks in flight and waiting.
+     */
+    public ProbeDispatcher.Statistics getStatistics() {
+        return dispatcher.getStatistics();
     }
 
-    private MiddlewareRequest<MobilityService> createServiceInfoRequest(MobilityService service) {
-        var baseUrl = service.getServiceUrl();
-        return rt.get(baseUrl + SERVICE_INFO_PATH)
-                .callRequestAdapters()
-                .expect(MobilityService.class);
+    private void serviceChanged(ServiceChange change) {
+        if (change.getType() == ServiceChange.Type.DELETED) {
+            schedule.cancel(change.getServiceId());
+            return;
+        }
+
+        var entry = registry.getEntry(change.getServiceId());
+
+        if (entry != null && change.getType() == ServiceChange.Type.UPDATED) {
+            // The provider announced itself again, so give it a new chance.
+            entry.getCircuitBreaker().reset();
+            entry.setProbeValidators(null);
+        }
+
+        // Entries being checked are rescheduled once their check completes.
+        if (entry != null && !entry.isProbing()) {
+            if (change.getType() == ServiceChange.Type.ACTIVATED || change.getType() == ServiceChange.Type.DEACTIVATED) {
+                // A state set from outside is confirmed soon.
+                intervals.checked(entry, true);
+            }
+
+            reschedule(entry);
+        }
     }
 
-    private void checkServiceAvailability(MiddlewareRequest<MobilityService> serviceInfoRequest, ActivityState state) {
-        ResponseEntity<MobilityService> response;
+    private void reschedule(ServiceEntry entry) {
+        if (isRegistered(entry)) {
+            var demand = entry.getDemand().getScore(System.currentTimeMillis(), demandHalfLifeMillis);
+            var dueAt = entry.getState().getLastUpdateMillis() + intervals.nextDelay(entry, demand);
+
+            // Open circuit breakers let no check through before they are half-open.
+            schedule.schedule(entry, Math.max(dueAt, entry.getCircuitBreaker().getOpenUntil()));
+        }
+    }
+
+    private boolean isRegistered(ServiceEntry entry) {
+        return registry.getEntry(entry.getId()) == entry;
+    }
+
+    private MiddlewareRequest<?> createServiceInfoRequest(ServiceEntry entry) {
+        var baseUrl = entry.getService().getServiceUrl();
+        var request = rt.get(baseUrl + SERVICE_INFO_PATH);
+
+        var validators = entry.getProbeValidators();
+
+        if (probeMode == ProbeMode.CONDITIONAL && validators != null) {
+            if (validators.getETag() != null) {
+                request = request.header(HttpHeaders.IF_NONE_MATCH, validators.getETag());
+            }
+            if (validators.getLastModified() != null) {
+                request = request.header(HttpHeaders.IF_MODIFIED_SINCE, validators.getLastModified());
+            }
+        }
+
+        request = request.callRequestAdapters();
+
+        return probeMode == ProbeMode.STATUS_ONLY
+                ? request.expect(Void.class)
+                : request.expect(MobilityService.class);
+    }
+
+    private void checkServiceAvailability(ServiceEntry entry) {
+        MiddlewareRequest<?> request;
 
         try {
-            response = serviceInfoRequest.go();
+            // The outgoing request adapters must be called from the scheduling thread,
+            // because they might rely on ThreadLocal storage.
+            request = createServiceInfoRequest(entry);
         } catch (Exception ex) {
-            state.markInactive();
+            checked(entry, false);
+            entry.finishProbe();
+            reschedule(entry);
             return;
         }
 
-        if (response == null
-                || response.getBody() == null
-                || response.getStatusCode().is4xxClientError()
-                || response.getStatusCode().is5xxServerError()) {
-            state.markInactive();
+        dispatcher.submit(ProbeDispatcher.hostOf(entry.getService().getServiceUrl()), () -> sendTimed(request, entry))
+                .whenComplete((response, ex) -> {
+                    try {
+                        var available = isAvailable(response, ex);
+
+                        if (available) {
+                            // Refreshing first, because updates drop the remembered validators.
+                            refreshService(entry, response.getBody());
+                            rememberValidators(entry, response);
+                        }
+
+                        checked(entry, available);
+                    } finally {
+                        entry.finishProbe();
+                        reschedule(entry);
+                    }
+                });
+    }
+
+    /**
+     * Sends the given request and records its round-trip time, but only if
+     * the service answered. Requests that fail early, e.g. because the
+     * connection is refused, would make the service look fast.
+     */
+    private ResponseEntity<?> sendTimed(MiddlewareRequest<?> request, ServiceEntry entry) {
+        var start = System.nanoTime();
+        ResponseEntity<?> response;
+
+        try {
+            response = request.go();
+        } catch (RestClientResponseException ex) {
+            // Answered with an error status, which is a complete exchange nevertheless.
+            recordLatency(entry, start);
+            throw ex;
+        }
+
+        recordLatency(entry, start);
+        return response;
+    }
+
+    private void recordLatency(ServiceEntry entry, long start) {
+        entry.getLatency().record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), latencyEwmaWeight);
+    }
+
+    private void refreshService(ServiceEntry entry, Object body) {
+        if (!(body instanceof MobilityService)) {
+            return;
+        }
+
+        var service = (MobilityService) body;
+
+        // Only accept service infos that could have been registered the same way.
+        if (!entry.getId().equals(service.getId()) || isBlank(service.getServiceUrl())) {
+            logger.debug("Ignoring the service info of service {}, because its id or URL is invalid.", entry.getId());
+            return;
+        }
+
+        var violations = validator.validate(service);
+
+        if (!violations.isEmpty()) {
+            logger.debug("Ignoring the service info of service {}, because it is invalid: {}", entry.getId(), violations);
+            return;
+        }
+
+        if (!entry.hasSameService(service) && registry.refresh(entry, service)) {
+            logger.debug("Refreshed service {} from its service info.", entry.getId());
+        }
+    }
+
+    private void rememberValidators(ServiceEntry entry, ResponseEntity<?> response) {
+        // A 304 answer keeps the validators that it confirmed.
+        if (probeMode == ProbeMode.CONDITIONAL && response.getStatusCode() != HttpStatus.NOT_MODIFIED) {
+            entry.setProbeValidators(ProbeValidators.of(response.getHeaders()));
+        }
+    }
+
+    private void checked(ServiceEntry entry, boolean available) {
+        var now = System.currentTimeMillis();
+        var state = entry.getState();
+        var breaker = entry.getCircuitBreaker();
+
+        if (available) {
+            breaker.recordSuccess();
+        } else {
+            breaker.recordFailure(now, failureThreshold, openDuration.toMillis());
+        }
+
+        var active = state.isActive();
+        var decided = entry.getFlapDamper().decide(available, active, now, flapDamping);
+
+        if (decided == available) {
+            // Confirms or flips the state, both refresh its timestamp.
+            intervals.checked(entry, state.trySetActive(decided));
         } else {
-            state.markActive();
+            // The check contradicts the state, but not often enough yet. Leaving the
+            // timestamp alone and resetting the interval makes the next check come soon.
+            intervals.checked(entry, true);
+        }
+    }
+
+    private boolean isAvailable(ResponseEntity<?> response, Throwable ex) {
+        if (ex != null || response == null) {
+            return false;
         }
+
+        var status = response.getStatusCode();
+
+        if (status.is4xxClientError() || status.is5xxServerError()) {
+            return false;
+        }
+
+        // Not modified means the service answered and still has the previous service info.
+        if (status == HttpStatus.NOT_MODIFIED || probeMode == ProbeMode.STATUS_ONLY) {
+            return true;
+        }
+
+        return response.getBody() != null;
     }
 
 }
@@ -0,0 +1,420 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.servicedirectory.core;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Fans out the changes of the {@link MobilityServiceRegistry} to subscribers,
+ * e.g. clients watching the registry using Server-Sent Events.
+ * <p>
+ * Publishing never blocks the registry: each subscriber has a bounded buffer
+ * into which changes are only offered. The buffers are drained to the
+ * subscribers by a fixed pool of "sender-threads". If the buffer of a slow
+ * subscriber overflows, its buffered changes are dropped and the subscriber is
+ * told to resync instead.
+ * <p>
+ * Sinks usually write to a socket and may block. A watchdog cancels every
+ * subscriber whose send takes longer than "send-timeout" and interrupts its
+ * sender thread. A write blocked in the socket may not react to that, so the
+ * thread stays stuck until the write fails, but the number of such threads is
+ * bounded by the pool. If no sender thread is available at all, the
+ * subscriber whose changes could not be dispatched is cancelled and its sink
+ * closed. At most "max-subscribers" subscribers are accepted at once.
+ *
+ * @author keim
+ */
+@Service
+public class ChangeBroadcaster {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChangeBroadcaster.class);
+
+    @Autowired
+    private MobilityServiceRegistry registry;
+
+    @Value("${service-directory.watch.buffer-size:256}")
+    private int bufferSize;
+
+    @Value("${service-directory.watch.sender-threads:4}")
+    private int senderThreads;
+
+    @Value("${service-directory.watch.send-timeout:PT2S}")
+    private Duration sendTimeout;
+
+    @Value("${service-directory.watch.max-subscribers:1000}")
+    private int maxSubscribers;
+
+    private final CopyOnWriteArraySet<Subscription> subscriptions = new CopyOnWriteArraySet<>();
+    private final AtomicInteger subscribers = new AtomicInteger();
+    private final LongAdder resyncs = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final Consumer<ServiceChange> listener = this::publish;
+
+    private ThreadPoolExecutor senders;
+    private ScheduledExecutorService watchdog;
+    private long sendTimeoutNanos;
+
+    @PostConstruct
+    public void init() {
+        if (sendTimeout == null || sendTimeout.isNegative() || sendTimeout.isZero()) {
+            throw new IllegalArgumentException("The value in configuration property \"service-directory.watch.send-timeout\" must be positive.");
+        }
+
+        if (senderThreads < 1) {
+            throw new IllegalArgumentException("The value in configuration property \"service-directory.watch.sender-threads\" must be at least 1.");
+        }
+
+        if (maxSubscribers < 1) {
+            throw new IllegalArgumentException("The value in configuration property \"service-directory.watch.max-subscribers\" must be at least 1.");
+        }
+
+        sendTimeoutNanos = sendTimeout.toNanos();
+
+        var threadCount = new AtomicInteger();
+
+        // Each subscriber waits with at most one drain at a time, so the queue only overflows if all senders are stuck.
+        senders = new ThreadPoolExecutor(senderThreads, senderThreads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(maxSubscribers), runnable -> {
+            var thread = new Thread(runnable, "change-sender-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "change-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        var period = Math.max(TimeUnit.MILLISECONDS.toNanos(10), sendTimeoutNanos / 4);
+        watchdog.scheduleWithFixedDelay(this::cancelStuckSends, period, period, TimeUnit.NANOSECONDS);
+
+        registry.addChangeListener(listener);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        registry.removeChangeListener(listener);
+        watchdog.shutdownNow();
+        senders.shutdownNow();
+    }
+
+    /**
+     * Subscribes to the changes of the registry that match the given filter.
+     *
+     * @param filter Only changes of services that match the modes, APIs and
+     * service ids of this query are passed to the sink. Deletions are matched
+     * against the service as it was before its deletion.
+     * @param sink Receives the changes on a sender thread.
+     * @return The subscription, which must be cancelled once the sink is no
+     * longer interested, or null if the maximum number of subscribers is
+     * reached.
+     */
+    public Subscription subscribe(SearchQuery filter, Sink sink) {
+        while (true) {
+            var count = subscribers.get();
+
+            if (count >= maxSubscribers) {
+                return null;
+            }
+
+            if (subscribers.compareAndSet(count, count + 1)) {
+                break;
+            }
+        }
+
+        var subscription = new Subscription(filter, sink);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    private void publish(ServiceChange change) {
+        for (var subscription : subscriptions) {
+            if (matches(subscription.filter, change)) {
+                subscription.offer(change);
+            }
+        }
+    }
+
+    private static boolean matches(SearchQuery filter, ServiceChange change) {
+        var service = change.getService();
+
+        if (!filter.getServiceIds().isEmpty() && !filter.getServiceIds().contains(ServiceIndex.foldId(change.getServiceId()))) {
+            return false;
+        }
+
+        if (!filter.getModes().isEmpty()
+                && (service.getModes() == null || service.getModes().stream().noneMatch(filter.getModes()::contains))) {
+            return false;
+        }
+
+        return filter.getApis().isEmpty()
+                || (service.getApis() != null && service.getApis().containsAll(filter.getApis()));
+    }
+
+    private void cancelStuckSends() {
+        var now = System.nanoTime();
+
+        for (var subscription : subscriptions) {
+            subscription.cancelIfStuck(now);
+        }
+    }
+
+    public Statistics getStatistics() {
+        return new Statistics(subscriptions.size(), resyncs.sum(), timeouts.sum(), rejections.sum());
+    }
+
+    /**
+     * Receives the changes of a subscription. Implementations may block, but
+     * a send that takes longer than the send timeout cancels the subscription
+     * and interrupts the sending thread.
+     */
+    public interface Sink {
+
+        void send(ServiceChange change) throws IOException;
+
+        /**
+         * Called instead of sending changes that got dropped, because the
+         * buffer of the subscription overflowed.
+         *
+         * @param epoch The epoch of the change log of the registry.
+         * @param sequence The sequence number of the latest change of the
+         * registry, from which the receiver can resync.
+         * @throws IOException
+         */
+        void resync(long epoch, long sequence) throws IOException;
+
+        /**
+         * Called after the subscription got cancelled, because a send timed
+         * out or no sender thread was available. After a timeout, it is called
+         * by the sender thread once the send returned. Implementations should
+         * release the connection to the receiver.
+         */
+        default void close() {
+        }
+    }
+
+    private interface Delivery {
+
+        void run() throws IOException;
+    }
+
+    public class Subscription {
+
+        private final SearchQuery filter;
+        private final Sink sink;
+        private final ArrayBlockingQueue<ServiceChange> buffer;
+
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicBoolean overflowed = new AtomicBoolean();
+        private volatile boolean cancelled;
+
+        /**
+         * The thread in {@link Sink#send} or {@link Sink#resync} and since
+         * when, guarded by this subscription.
+         */
+        private Thread sender;
+        private long sendStarted;
+        private boolean timedOut;
+
+        private Subscription(SearchQuery filter, Sink sink) {
+            this.filter = filter;
+            this.sink = sink;
+            this.buffer = new ArrayBlockingQueue<>(Math.max(1, bufferSize));
+        }
+
+        public void cancel() {
+            cancelled = true;
+
+            if (subscriptions.remove(this)) {
+                subscribers.decrementAndGet();
+            }
+
+            buffer.clear();
+        }
+
+        private void offer(ServiceChange change) {
+            if (!buffer.offer(change)) {
+                // Drop everything, the subscriber must resync anyway.
+                overflowed.set(true);
+                buffer.clear();
+            }
+
+            scheduleDrain();
+        }
+
+        private void scheduleDrain() {
+            if (!cancelled && draining.compareAndSet(false, true)) {
+                try {
+                    senders.execute(this::drain);
+                } catch (RejectedExecutionException ex) {
+                    // No send is in flight, so the sink can be closed right away.
+                    draining.set(false);
+                    rejections.increment();
+                    logger.debug("Cancelling subscription, because no sender thread is available.");
+                    cancel();
+                    sink.close();
+                }
+            }
+        }
+
+        private void drain() {
+            try {
+                while (!cancelled) {
+                    if (overflowed.getAndSet(false)) {
+                        resyncs.increment();
+                        var epoch = registry.getEpoch();
+                        var sequence = registry.getSequence();
+                        deliver(() -> sink.resync(epoch, sequence));
+                        continue;
+                    }
+
+                    var change = buffer.poll();
+
+                    if (change == null) {
+                        break;
+                    }
+
+                    deliver(() -> sink.send(change));
+                }
+            } catch (IOException | RuntimeException ex) {
+                if (!cancelled) {
+                    logger.debug("Cancelling subscription, because its sink failed: {}", ex.getMessage());
+                    cancel();
+                }
+            } finally {
+                draining.set(false);
+            }
+
+            if (isTimedOut()) {
+                sink.close();
+                return;
+            }
+
+            // Changes might have been offered after the buffer was seen empty.
+            if (!cancelled && (!buffer.isEmpty() || overflowed.get())) {
+                scheduleDrain();
+            }
+        }
+
+        private void deliver(Delivery delivery) throws IOException {
+            synchronized (this) {
+                sender = Thread.currentThread();
+                sendStarted = System.nanoTime();
+            }
+
+            try {
+                delivery.run();
+            } finally {
+                synchronized (this) {
+                    sender = null;
+
+                    if (timedOut) {
+                        // The interrupt of the watchdog must not hit the next task of this thread.
+                        Thread.interrupted();
+                    }
+                }
+            }
+        }
+
+        private synchronized boolean isTimedOut() {
+            return timedOut;
+        }
+
+        private synchronized void cancelIfStuck(long now) {
+            if (sender != null && !timedOut && now - sendStarted > sendTimeoutNanos) {
+                timedOut = true;
+                timeouts.increment();
+                logger.debug("Cancelling subscription, because sending to its sink timed out.");
+                cancel();
+                sender.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Statistics about the subscribers of a {@link ChangeBroadcaster}.
+     */
+    public static class Statistics {
+
+        private final int subscribers;
+        private final long resyncs;
+        private final long timeouts;
+        private final long rejections;
+
+        public Statistics(int subscribers, long resyncs, long timeouts, long rejections) {
+            this.subscribers = subscribers;
+            this.resyncs = resyncs;
+            this.timeouts = timeouts;
+            this.rejections = rejections;
+        }
+
+        public int getSubscribers() {
+            return subscribers;
+        }
+
+        /**
+         * @return The number of times a subscriber had to resync, because its
+         * buffer overflowed.
+         */
+        public long getResyncs() {
+            return resyncs;
+        }
+
+        /**
+         * @return The number of subscribers that got cancelled, because
+         * sending to them timed out.
+         */
+        public long getTimeouts() {
+            return timeouts;
+        }
+
+        /**
+         * @return The number of subscribers that got cancelled, because no
+         * sender thread was available for them.
+         */
+        public long getRejections() {
+            return rejections;
+        }
+    }
+}
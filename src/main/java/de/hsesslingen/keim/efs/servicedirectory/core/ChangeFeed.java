@@ -0,0 +1,75 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.servicedirectory.core;
+
+import java.util.List;
+
+/**
+ * The changes of the registry since a sequence number given by a client.
+ * <p>
+ * If {@link #isResyncRequired()} is true, the requested changes are no longer
+ * available. The client should then remember {@link #getSequence()}, fetch all
+ * services and continue with the changes since that sequence. Changes are
+ * idempotent, so applying some of them twice does no harm.
+ *
+ * @author keim
+ */
+public class ChangeFeed {
+
+    private final long epoch;
+    private final long sequence;
+    private final boolean resyncRequired;
+    private final List<ServiceChange> changes;
+
+    public ChangeFeed(long epoch, long sequence, boolean resyncRequired, List<ServiceChange> changes) {
+        this.epoch = epoch;
+        this.sequence = sequence;
+        this.resyncRequired = resyncRequired;
+        this.changes = changes;
+    }
+
+    /**
+     * @return An identifier of the change log. It changes when the service
+     * directory restarts, in which case sequence numbers start all over again.
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * @return The sequence number of the latest change contained in this feed.
+     * Clients should ask for the changes since this sequence next time.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public boolean isResyncRequired() {
+        return resyncRequired;
+    }
+
+    public List<ServiceChange> getChanges() {
+        return changes;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.servicedirectory.core;
+
+import de.hsesslingen.keim.efs.mobility.service.MobilityService;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded in-memory log of the latest changes of the registry. Changes are
+ * numbered with increasing sequence numbers and kept in a ring buffer, so the
+ * oldest changes get overwritten once the log is full.
+ * <p>
+ * Appending is synchronized, reading is lock-free. Readers detect entries that
+ * got overwritten while reading by their sequence numbers.
+ *
+ * @author keim
+ */
+public class ChangeLog {
+
+    /**
+     * Random, so that the logs of instances started at the same time differ.
+     */
+    private final long epoch = new SecureRandom().nextLong();
+    private final int capacity;
+    private final AtomicReferenceArray<ServiceChange> ring;
+
+    private volatile long sequence;
+
+    public ChangeLog(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity of the change log must be positive.");
+        }
+
+        this.capacity = capacity;
+        this.ring = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * Records a change.
+     *
+     * @param type
+     * @param serviceId
+     * @param service The service after the change, or the deleted service.
+     * @param active Whether the service is active after the change.
+     * @return The recorded change.
+     */
+    public synchronized ServiceChange append(ServiceChange.Type type, String serviceId, MobilityService service, boolean active) {
+        var next = sequence + 1;
+        var change = new ServiceChange(next, type, serviceId, service, active);
+
+        ring.set(slot(next), change);
+        sequence = next;
+
+        return change;
+    }
+
+    /**
+     * @return The sequence number of the latest change, or zero if there was
+     * none yet.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Returns all changes with a sequence number greater than the given one.
+     * If some of these changes are no longer available, the returned feed
+     * requires a resync. The same holds if the given sequence is ahead of this
+     * log. Sequence numbers from before a restart of the service directory are
+     * only detected reliably by their epoch, see {@link #since(long, long)}.
+     *
+     * @param since Must not be negative.
+     * @return
+     */
+    public ChangeFeed since(long since) {
+        if (since < 0) {
+            throw new IllegalArgumentException("The sequence number must not be negative.");
+        }
+
+        var latest = sequence;
+
+        if (since > latest || since < latest - capacity) {
+            return new ChangeFeed(epoch, latest, true, List.of());
+        }
+
+        var changes = new ArrayList<ServiceChange>((int) (latest - since));
+
+        for (var s = since + 1; s <= latest; s++) {
+            var change = ring.get(slot(s));
+
+            if (change == null || change.getSequence() != s) {
+                // Overwritten by newer changes while reading.
+                return new ChangeFeed(epoch, sequence, true, List.of());
+            }
+
+            changes.add(change);
+        }
+
+        return new ChangeFeed(epoch, latest, false, changes);
+    }
+
+    /**
+     * Like {@link #since(long)}, but the returned feed requires a resync if
+     * the given epoch is not the epoch of this log, i.e. if the given sequence
+     * number was handed out before the service directory restarted.
+     *
+     * @param epoch The epoch the client got along with the sequence number.
+     * @param since Must not be negative.
+     * @return
+     */
+    public ChangeFeed since(long epoch, long since) {
+        if (epoch != this.epoch) {
+            return new ChangeFeed(this.epoch, sequence, true, List.of());
+        }
+
+        return since(since);
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % capacity);
+    }
+}
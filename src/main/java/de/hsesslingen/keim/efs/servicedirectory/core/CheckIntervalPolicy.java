@@ -0,0 +1,168 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.servicedirectory.core;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Chooses the interval between the availability checks of each service.
+ * <p>
+ * Services that stay available are checked less and less often, up to the
+ * maximum interval. Services whose state just changed are checked again after
+ * the minimum interval, because they are likely to change again. Services that
+ * stay unavailable back off as well, but never beyond the base interval, so
+ * that their recovery is noticed in time.
+ * <p>
+ * Every delay is randomized by the jitter, so that services registered at the
+ * same time do not stay due at the same time.
+ * <p>
+ * Optionally, the delay follows the search demand of a service: hot services
+ * are checked at least every base interval, while services that nobody
+ * searched for lately are checked less often by the cold factor.
+ *
+ * @author keim
+ */
+class CheckIntervalPolicy {
+
+    private final long minInterval;
+    private final long baseInterval;
+    private final long maxInterval;
+    private final double backoff;
+    private final double jitter;
+    private final double hotDemand;
+    private final double coldFactor;
+
+    /**
+     * @param minInterval Millis.
+     * @param baseInterval Millis, used for services that were not checked yet.
+     * @param maxInterval Millis.
+     * @param backoff The factor by which the interval grows after each check
+     * that did not change the state of a service.
+     * @param jitter The fraction of the interval by which a delay may deviate
+     * randomly, between 0 and 1.
+     */
+    CheckIntervalPolicy(long minInterval, long baseInterval, long maxInterval, double backoff, double jitter) {
+        this(minInterval, baseInterval, maxInterval, backoff, jitter, Double.POSITIVE_INFINITY, 1);
+    }
+
+    /**
+     * @param minInterval
+     * @param baseInterval
+     * @param maxInterval
+     * @param backoff
+     * @param jitter
+     * @param hotDemand The demand from which a service counts as hot.
+     * @param coldFactor The factor by which the delay of services without
+     * demand grows, at least 1.
+     */
+    CheckIntervalPolicy(long minInterval, long baseInterval, long maxInterval, double backoff, double jitter, double hotDemand, double coldFactor) {
+        if (minInterval < 0 || baseInterval < minInterval || maxInterval < baseInterval) {
+            throw new IllegalArgumentException("The check intervals must satisfy 0 <= min <= base <= max.");
+        }
+
+        if (backoff < 1) {
+            throw new IllegalArgumentException("The backoff of the check interval must not be smaller than 1.");
+        }
+
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("The jitter of the check interval must be between 0 and 1.");
+        }
+
+        if (coldFactor < 1) {
+            throw new IllegalArgumentException("The cold factor of the check interval must not be smaller than 1.");
+        }
+
+        this.minInterval = minInterval;
+        this.baseInterval = baseInterval;
+        this.maxInterval = maxInterval;
+        this.backoff = backoff;
+        this.jitter = jitter;
+        this.hotDemand = hotDemand;
+        this.coldFactor = coldFactor;
+    }
+
+    /**
+     * Adapts the check interval of the given entry to the outcome of its
+     * latest check.
+     *
+     * @param entry
+     * @param changed Whether the check changed the state of the service.
+     */
+    void checked(ServiceEntry entry, boolean changed) {
+        long interval;
+
+        if (changed) {
+            interval = minInterval;
+        } else {
+            var current = entry.getCheckInterval() == 0 ? baseInterval : entry.getCheckInterval();
+            var limit = entry.isActive() ? maxInterval : baseInterval;
+            interval = Math.min(limit, Math.max(minInterval, (long) (current * backoff)));
+        }
+
+        entry.setCheckInterval(interval);
+    }
+
+    /**
+     * Returns the delay until the next check of the given entry, counted from
+     * the last update of its state.
+     *
+     * @param entry
+     * @return Millis.
+     */
+    long nextDelay(ServiceEntry entry) {
+        var interval = entry.getCheckInterval();
+        var random = ThreadLocalRandom.current();
+
+        if (interval == 0) {
+            // Spread services that were never checked over the whole base interval.
+            return minInterval + (long) (random.nextDouble() * (baseInterval - minInterval));
+        }
+
+        return Math.max(0, interval + (long) (interval * jitter * (2 * random.nextDouble() - 1)));
+    }
+
+    /**
+     * Like {@link #nextDelay(ServiceEntry)}, but adapted to the search demand
+     * of the service.
+     *
+     * @param entry
+     * @param demand The decayed number of search hits of the service, see
+     * {@link DemandCounter}.
+     * @return Millis.
+     */
+    long nextDelay(ServiceEntry entry, double demand) {
+        var delay = nextDelay(entry);
+
+        if (demand >= hotDemand) {
+            return Math.min(delay, baseInterval);
+        }
+
+        // Services whose state is being confirmed keep their short interval.
+        if (demand < 1 && entry.getCheckInterval() > minInterval) {
+            return Math.max(delay, Math.min(maxInterval, (long) (delay * coldFactor)));
+        }
+
+        return delay;
+    }
+}
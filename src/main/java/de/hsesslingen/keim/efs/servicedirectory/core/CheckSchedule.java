@@ -0,0 +1,158 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.servicedirectory.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A priority queue of registry entries ordered by the point in time of their
+ * next availability check. Taking the due entries only touches those entries,
+ * instead of scanning the whole registry.
+ * <p>
+ * Rescheduling an entry does not search the queue for its previous position.
+ * The entry remembers its current position instead and outdated positions are
+ * skipped when they come up. The queue is compacted if too many outdated
+ * positions pile up. The current positions are also looked up by service id,
+ * so that the entries of deleted services can be cancelled.
+ *
+ * @author keim
+ */
+class CheckSchedule {
+
+    private final PriorityQueue<Deadline> queue = new PriorityQueue<>();
+    private final HashMap<String, Deadline> deadlines = new HashMap<>();
+
+    /**
+     * The number of positions in the queue that are outdated.
+     */
+    private int outdated;
+
+    /**
+     * Schedules the next check of the given entry, replacing the previous one
+     * if present.
+     *
+     * @param entry
+     * @param dueAt Epoch millis.
+     */
+    synchronized void schedule(ServiceEntry entry, long dueAt) {
+        if (entry.getDeadline() != null) {
+            outdated++;
+        }
+
+        var deadline = new Deadline(entry, dueAt);
+        entry.setDeadline(deadline);
+        queue.add(deadline);
+        deadlines.put(entry.getId(), deadline);
+
+        compactIfNeeded();
+    }
+
+    /**
+     * Removes the entry of the given service from the schedule, e.g. because
+     * the service was deleted.
+     *
+     * @param serviceId
+     */
+    synchronized void cancel(String serviceId) {
+        var deadline = deadlines.remove(serviceId);
+
+        if (deadline != null && deadline.entry.getDeadline() == deadline) {
+            deadline.entry.setDeadline(null);
+            outdated++;
+            compactIfNeeded();
+        }
+    }
+
+    /**
+     * Takes all entries that are due at the given point in time out of the
+     * schedule. They must be scheduled again after their check.
+     *
+     * @param now Epoch millis.
+     * @return
+     */
+    synchronized List<ServiceEntry> pollDue(long now) {
+        var due = new ArrayList<ServiceEntry>();
+
+        while (!queue.isEmpty() && queue.peek().dueAt <= now) {
+            var deadline = queue.poll();
+            var entry = deadline.entry;
+
+            if (entry.getDeadline() != deadline) {
+                outdated--;
+                continue;
+            }
+
+            entry.setDeadline(null);
+            deadlines.remove(entry.getId(), deadline);
+            due.add(entry);
+        }
+
+        return due;
+    }
+
+    /**
+     * @return The number of scheduled entries.
+     */
+    synchronized int size() {
+        return queue.size() - outdated;
+    }
+
+    private void compactIfNeeded() {
+        if (outdated > 64 && outdated > queue.size() / 2) {
+            queue.removeIf(deadline -> deadline.entry.getDeadline() != deadline);
+            outdated = 0;
+        }
+    }
+
+    /**
+     * Returns the point in time of the next check of the given entry.
+     *
+     * @param entry
+     * @return Epoch millis or -1 if the entry is not scheduled, e.g. because
+     * it is being checked right now.
+     */
+    static long getDueAt(ServiceEntry entry) {
+        var deadline = entry.getDeadline();
+        return deadline == null ? -1 : deadline.dueAt;
+    }
+
+    static class Deadline implements Comparable<Deadline> {
+
+        private final ServiceEntry entry;
+        private final long dueAt;
+
+        Deadline(ServiceEntry entry, long dueAt) {
+            this.entry = entry;
+            this.dueAt = dueAt;
+        }
+
+        @Override
+        public int compareTo(Deadline other) {
+            return Long.compare(dueAt, other.dueAt);
+        }
+    }
+}
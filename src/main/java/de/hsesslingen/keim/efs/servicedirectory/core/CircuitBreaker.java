@@ -0,0 +1,154 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.servicedirectory.core;
+
+/**
+ * The circuit breaker of the availability checks of a single service.
+ * <p>
+ * The breaker is closed as long as the checks succeed. After a number of
+ * consecutive failures it opens and the service is not checked at all until
+ * the open duration has passed. Then a single check is let through in the
+ * half-open state, which closes the breaker on success and opens it again on
+ * failure.
+ *
+ * @author keim
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openUntil;
+
+    /**
+     * Asks whether a check of the service may be sent now. Moves an open
+     * breaker whose open duration has passed into the half-open state.
+     *
+     * @param now Epoch millis.
+     * @return
+     */
+    public synchronized boolean tryAcquire(long now) {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (now < openUntil) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                return true;
+            default:
+                // The single half-open check is still in flight.
+                return false;
+        }
+    }
+
+    public synchronized void recordSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        openUntil = 0;
+    }
+
+    /**
+     * Records a failed check and opens the breaker if the threshold is
+     * reached or if this was the half-open check.
+     *
+     * @param now Epoch millis.
+     * @param failureThreshold The number of consecutive failures after which
+     * the breaker opens.
+     * @param openMillis How long the breaker stays open.
+     */
+    public synchronized void recordFailure(long now, int failureThreshold, long openMillis) {
+        consecutiveFailures++;
+
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openUntil = now + openMillis;
+        }
+    }
+
+    /**
+     * Closes the breaker, e.g. because the service was registered again.
+     */
+    public void reset() {
+        recordSuccess();
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * @return The epoch millis until which an open breaker lets no check
+     * through or 0 if it is not open.
+     */
+    public synchronized long getOpenUntil() {
+        return state == State.CLOSED ? 0 : openUntil;
+    }
+
+    /**
+     * @return A consistent view of the state of this breaker.
+     */
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(state, consecutiveFailures, getOpenUntil());
+    }
+
+    /**
+     * The state of a {@link CircuitBreaker} at some point in time.
+     */
+    public static class Snapshot {
+
+        private final State state;
+        private final int consecutiveFailures;
+        private final long openUntil;
+
+        public Snapshot(State state, int consecutiveFailures, long openUntil) {
+            this.state = state;
+            this.consecutiveFailures = consecutiveFailures;
+            this.openUntil = openUntil;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        public int getConsecutiveFailures() {
+            return consecutiveFailures;
+        }
+
+        /**
+         * @return See {@link CircuitBreaker#getOpenUntil()}.
+         */
+        public long getOpenUntil() {
+            return openUntil;
+        }
+    }
+}
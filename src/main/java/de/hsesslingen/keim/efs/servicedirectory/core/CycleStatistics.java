@@ -0,0 +1,138 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.servicedirectory.core;
+
+/**
+ * Statistics about the checking cycles of the {@link AvailabilityChecker}.
+ *
+ * @author keim
+ */
+public class CycleStatistics {
+
+    private final long cycles;
+    private final long mergedRuns;
+    private final long lastDurationMillis;
+    private final long maxDurationMillis;
+    private final double averageDurationMillis;
+    private final int lastStarted;
+    private final int lastCarriedOver;
+    private final long totalCarriedOver;
+
+    public CycleStatistics(long cycles, long mergedRuns, long lastDurationMillis, long maxDurationMillis, double averageDurationMillis, int lastStarted, int lastCarriedOver, long totalCarriedOver) {
+        this.cycles = cycles;
+        this.mergedRuns = mergedRuns;
+        this.lastDurationMillis = lastDurationMillis;
+        this.maxDurationMillis = maxDurationMillis;
+        this.averageDurationMillis = averageDurationMillis;
+        this.lastStarted = lastStarted;
+        this.lastCarriedOver = lastCarriedOver;
+        this.totalCarriedOver = totalCarriedOver;
+    }
+
+    public long getCycles() {
+        return cycles;
+    }
+
+    /**
+     * @return The number of scheduled runs that fell into a running cycle and
+     * were merged into it.
+     */
+    public long getMergedRuns() {
+        return mergedRuns;
+    }
+
+    public long getLastDurationMillis() {
+        return lastDurationMillis;
+    }
+
+    public long getMaxDurationMillis() {
+        return maxDurationMillis;
+    }
+
+    public double getAverageDurationMillis() {
+        return averageDurationMillis;
+    }
+
+    /**
+     * @return The number of checks started by the last cycle, including the
+     * revalidations started since the cycle before.
+     */
+    public int getLastStarted() {
+        return lastStarted;
+    }
+
+    /**
+     * @return The number of due checks the last cycle carried over to the
+     * next one.
+     */
+    public int getLastCarriedOver() {
+        return lastCarriedOver;
+    }
+
+    public long getTotalCarriedOver() {
+        return totalCarriedOver;
+    }
+
+    /**
+     * Collects the statistics of the cycles as they finish.
+     */
+    static class Recorder {
+
+        private long cycles;
+        private long mergedRuns;
+        private long lastDurationNanos;
+        private long maxDurationNanos;
+        private long totalDurationNanos;
+        private int lastStarted;
+        private int lastCarriedOver;
+        private long totalCarriedOver;
+
+        synchronized void merged() {
+            mergedRuns++;
+        }
+
+        synchronized void finished(long durationNanos, int started, int carriedOver) {
+            cycles++;
+            lastDurationNanos = durationNanos;
+            maxDurationNanos = Math.max(maxDurationNanos, durationNanos);
+            totalDurationNanos += durationNanos;
+            lastStarted = started;
+            lastCarriedOver = carriedOver;
+            totalCarriedOver += carriedOver;
+        }
+
+        synchronized CycleStatistics toStatistics() {
+            return new CycleStatistics(
+                    cycles,
+                    mergedRuns,
+                    lastDurationNanos / 1000000,
+                    maxDurationNanos / 1000000,
+                    cycles == 0 ? 0 : totalDurationNanos / 1e6 / cycles,
+                    lastStarted,
+                    lastCarriedOver,
+                    totalCarriedOver
+            );
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.servicedirectory.core;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how often a service appears in search results, as an exponentially
+ * decaying score.
+ * <p>
+ * Counting a hit is a single {@link LongAdder} increment. The decay is only
+ * applied when the score is read, which folds the hits counted since the last
+ * read into the score.
+ *
+ * @author keim
+ */
+public class DemandCounter {
+
+    private final LongAdder hits = new LongAdder();
+
+    private double score;
+    private long scoreUpdatedAt;
+
+    public void hit() {
+        hits.increment();
+    }
+
+    /**
+     * @param count The number of hits to count at once.
+     */
+    public void hit(long count) {
+        hits.add(count);
+    }
+
+    /**
+     * @param now Epoch millis.
+     * @param halfLifeMillis The time after which a hit counts only half.
+     * @return The decayed number of hits.
+     */
+    public synchronized double getScore(long now, long halfLifeMillis) {
+        if (score > 0 && now > scoreUpdatedAt) {
+            score *= Math.pow(0.5, (double) (now - scoreUpdatedAt) / halfLifeMillis);
+        }
+
+        score += hits.sumThenReset();
+        scoreUpdatedAt = Math.max(now, scoreUpdatedAt);
+
+        return score;
+    }
+}
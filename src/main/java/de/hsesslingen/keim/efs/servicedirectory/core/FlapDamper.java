@@ -0,0 +1,156 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.servicedirectory.core;
+
+/**
+ * Damps the flapping of the "active" flag of a single service between
+ * availability checks.
+ * <p>
+ * A service is only marked inactive after a number of consecutive failed
+ * checks and only marked active again after a number of consecutive
+ * successful ones. Optionally, every flip adds to a flap penalty, which decays
+ * exponentially over time. While the penalty is above the suppress threshold,
+ * an inactive service is not marked active again.
+ *
+ * @author keim
+ */
+public class FlapDamper {
+
+    private int consecutiveSuccesses;
+    private int consecutiveFailures;
+    private double penalty;
+    private long penaltyUpdatedAt;
+
+    /**
+     * Records the outcome of a check and decides on the "active" flag.
+     *
+     * @param available Whether the check succeeded.
+     * @param active The current "active" flag of the service.
+     * @param now Epoch millis.
+     * @param policy
+     * @return The "active" flag the service should have now.
+     */
+    public synchronized boolean decide(boolean available, boolean active, long now, Policy policy) {
+        decay(now, policy);
+
+        if (available) {
+            consecutiveSuccesses++;
+            consecutiveFailures = 0;
+
+            if (active) {
+                return true;
+            }
+
+            if (consecutiveSuccesses >= policy.successesToActivate && !isSuppressed(policy)) {
+                flipped(policy);
+                return true;
+            }
+
+            return false;
+        } else {
+            consecutiveFailures++;
+            consecutiveSuccesses = 0;
+
+            if (!active) {
+                return false;
+            }
+
+            if (consecutiveFailures >= policy.failuresToDeactivate) {
+                flipped(policy);
+                return false;
+            }
+
+            return true;
+        }
+    }
+
+    private boolean isSuppressed(Policy policy) {
+        return policy.suppressThreshold > 0 && penalty >= policy.suppressThreshold;
+    }
+
+    private void flipped(Policy policy) {
+        if (policy.suppressThreshold > 0) {
+            penalty += 1;
+        }
+    }
+
+    private void decay(long now, Policy policy) {
+        if (penalty > 0 && now > penaltyUpdatedAt) {
+            penalty *= Math.pow(0.5, (double) (now - penaltyUpdatedAt) / policy.penaltyHalfLifeMillis);
+        }
+
+        penaltyUpdatedAt = Math.max(now, penaltyUpdatedAt);
+    }
+
+    /**
+     * @param now Epoch millis.
+     * @param policy
+     * @return The current flap penalty.
+     */
+    public synchronized double getPenalty(long now, Policy policy) {
+        decay(now, policy);
+        return penalty;
+    }
+
+    public synchronized int getConsecutiveSuccesses() {
+        return consecutiveSuccesses;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * The configuration of the flap damping, shared by all services.
+     */
+    public static class Policy {
+
+        private final int failuresToDeactivate;
+        private final int successesToActivate;
+        private final long penaltyHalfLifeMillis;
+        private final double suppressThreshold;
+
+        /**
+         * @param failuresToDeactivate
+         * @param successesToActivate
+         * @param penaltyHalfLifeMillis
+         * @param suppressThreshold The flap penalty from which inactive
+         * services are not marked active again. Zero disables the penalty.
+         */
+        public Policy(int failuresToDeactivate, int successesToActivate, long penaltyHalfLifeMillis, double suppressThreshold) {
+            if (failuresToDeactivate < 1 || successesToActivate < 1) {
+                throw new IllegalArgumentException("The number of checks to change the state of a service must be positive.");
+            }
+
+            if (penaltyHalfLifeMillis <= 0) {
+                throw new IllegalArgumentException("The half-life of the flap penalty must be positive.");
+            }
+
+            this.failuresToDeactivate = failuresToDeactivate;
+            this.successesToActivate = successesToActivate;
+            this.penaltyHalfLifeMillis = penaltyHalfLifeMillis;
+            this.suppressThreshold = suppressThreshold;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.servicedirectory.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The round-trip times of the availability checks of a single service. They
+ * are kept in a histogram with fixed, roughly logarithmic buckets and as an
+ * exponentially weighted moving average (EWMA).
+ * <p>
+ * Recording is lock-free and does not allocate, so it can be done on every
+ * check.
+ *
+ * @author keim
+ */
+public class LatencyStats {
+
+    /**
+     * The inclusive upper bounds of the histogram buckets in millis. A last
+     * bucket without upper bound holds all longer round trips.
+     */
+    private static final long[] BUCKET_BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000};
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong maxMillis = new AtomicLong();
+
+    /**
+     * The bits of the EWMA as double, NaN if nothing was recorded yet.
+     */
+    private final AtomicLong ewmaBits = new AtomicLong(Double.doubleToRawLongBits(Double.NaN));
+
+    /**
+     * Records the round-trip time of a check.
+     *
+     * @param millis
+     * @param weight The weight of this round trip in the EWMA, between 0 and
+     * 1.
+     */
+    public void record(long millis, double weight) {
+        millis = Math.max(0, millis);
+
+        buckets.incrementAndGet(bucketOf(millis));
+        count.incrementAndGet();
+        maxMillis.accumulateAndGet(millis, Math::max);
+
+        while (true) {
+            var currentBits = ewmaBits.get();
+            var current = Double.longBitsToDouble(currentBits);
+            var next = Double.isNaN(current) ? millis : current + weight * (millis - current);
+
+            if (ewmaBits.compareAndSet(currentBits, Double.doubleToRawLongBits(next))) {
+                return;
+            }
+        }
+    }
+
+    private static int bucketOf(long millis) {
+        for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+            if (millis <= BUCKET_BOUNDS[i]) {
+                return i;
+            }
+        }
+
+        return BUCKET_BOUNDS.length;
+    }
+
+    /**
+     * @return The EWMA of the round-trip times in millis or NaN if no check
+     * was recorded yet.
+     */
+    public double getEwmaMillis() {
+        return Double.longBitsToDouble(ewmaBits.get());
+    }
+
+    public boolean hasSamples() {
+        return count.get() > 0;
+    }
+
+    public Summary getSummary() {
+        var counts = new long[buckets.length()];
+        long total = 0;
+
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+
+        var max = maxMillis.get();
+
+        return new Summary(
+                total,
+                hasSamples() ? getEwmaMillis() : null,
+                max,
+                percentile(counts, total, 0.5, max),
+                percentile(counts, total, 0.9, max),
+                percentile(counts, total, 0.99, max),
+                BUCKET_BOUNDS.clone(),
+                counts
+        );
+    }
+
+    /**
+     * Estimates a percentile as the upper bound of the bucket it falls in.
+     */
+    private static Long percentile(long[] counts, long total, double p, long max) {
+        if (total == 0) {
+            return null;
+        }
+
+        var rank = (long) Math.ceil(p * total);
+        long seen = 0;
+
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+
+            if (seen >= rank) {
+                return i < BUCKET_BOUNDS.length ? Math.min(BUCKET_BOUNDS[i], max) : max;
+            }
+        }
+
+        return max;
+    }
+
+    /**
+     * A consistent enough copy of {@link LatencyStats} for reporting.
+     */
+    public static class Summary {
+
+        private final long count;
+        private final Double ewmaMillis;
+        private final long maxMillis;
+        private final Long p50Millis;
+        private final Long p90Millis;
+        private final Long p99Millis;
+        private final long[] bucketBoundsMillis;
+        private final long[] bucketCounts;
+
+        public Summary(long count, Double ewmaMillis, long maxMillis, Long p50Millis, Long p90Millis, Long p99Millis, long[] bucketBoundsMillis, long[] bucketCounts) {
+            this.count = count;
+            this.ewmaMillis = ewmaMillis;
+            this.maxMillis = maxMillis;
+            this.p50Millis = p50Millis;
+            this.p90Millis = p90Millis;
+            this.p99Millis = p99Millis;
+            this.bucketBoundsMillis = bucketBoundsMillis;
+            this.bucketCounts = bucketCounts;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public Double getEwmaMillis() {
+            return ewmaMillis;
+        }
+
+        public long getMaxMillis() {
+            return maxMillis;
+        }
+
+        public Long getP50Millis() {
+            return p50Millis;
+        }
+
+        public Long getP90Millis() {
+            return p90Millis;
+        }
+
+        public Long getP99Millis() {
+            return p99Millis;
+        }
+
+        /**
+         * @return The inclusive upper bounds of the buckets. The last bucket
+         * of {@link #getBucketCounts()} has no upper bound.
+         */
+        public long[] getBucketBoundsMillis() {
+            return bucketBoundsMillis;
+        }
+
+        public long[] getBucketCounts() {
+            return bucketCounts;
+        }
+    }
+}
@@ -23,21 +23,41 @@
  */
 package de.hsesslingen.keim.efs.servicedirectory.core;
 
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
+import static java.util.stream.Collectors.toList;
+import javax.annotation.PostConstruct;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 
 import de.hsesslingen.keim.efs.mobility.service.MobilityService;
 import de.hsesslingen.keim.efs.mobility.service.MobilityService.API;
 import de.hsesslingen.keim.efs.mobility.service.Mode;
-import static java.util.Collections.disjoint;
 import org.springframework.stereotype.Service;
-import static org.springframework.util.CollectionUtils.isEmpty;
 
 /**
  * Utility class for finding registered services.
+ * <p>
+ * Search results are cached per normalized {@link SearchQuery} and tagged with
+ * the version of the registry snapshot they were computed from, so any change
+ * of the registry invalidates them. Concurrent identical searches on a cold
+ * cache are computed only once.
+ * <p>
+ * Every search counts as a hit of its (cached) result. The hits are spread to
+ * the {@link DemandCounter}s of the services in the result by
+ * {@link #spreadDemand()}, so that the availability of popular services can be
+ * checked with priority.
+ * <p>
+ * Searches always answer from the current state of the services. Services
+ * whose next availability check is overdue are handed to the revalidator, if
+ * one is set, which re-checks them in the background. Each cached result is
+ * scanned for such services at most once per "stale-scan-interval", so that
+ * repeated searches do not read the state of every service they return.
  *
  * @author k.sivarasah 12 Sep 2019
  */
@@ -47,6 +67,39 @@ public class MobilityServiceFinder {
     @Autowired
     private MobilityServiceRegistry registry;
 
+    @Value("${service-directory.search-cache.max-size:256}")
+    private int searchCacheMaxSize;
+
+    @Value("${service-directory.search-cache.stale-scan-interval:PT1S}")
+    private Duration staleScanInterval;
+
+    private SearchCache cache;
+    private long staleScanIntervalMillis;
+
+    private volatile Consumer<ServiceEntry> revalidator;
+
+    @PostConstruct
+    public void init() {
+        if (staleScanInterval == null || staleScanInterval.isNegative()) {
+            throw new IllegalArgumentException("The value in configuration property \"service-directory.search-cache.stale-scan-interval\" must not be negative.");
+        }
+
+        cache = new SearchCache(searchCacheMaxSize);
+        staleScanIntervalMillis = staleScanInterval.toMillis();
+    }
+
+    /**
+     * Sets the handler that is called with the services found by searches
+     * whose next availability check is overdue, e.g. to re-check them. It must
+     * return quickly and deduplicate by itself, because the same service may
+     * be found by many searches.
+     *
+     * @param revalidator May be null.
+     */
+    public void setRevalidator(Consumer<ServiceEntry> revalidator) {
+        this.revalidator = revalidator;
+    }
+
     /**
      * Searches for services with consideration of the provided (optional)
      * parameters.
@@ -57,7 +110,7 @@ public class MobilityServiceFinder {
      * @param excludeInactive Excludes inactive mobility provider services from
      * the result list.
      *
-     * @return List of {@link MobilityService}
+     * @return Unmodifiable list of {@link MobilityService}
      */
     public List<MobilityService> search(
             Set<Mode> modes,
@@ -65,13 +118,133 @@ public class MobilityServiceFinder {
             boolean excludeInactive,
             Set<String> serviceIds
     ) {
-        return registry.streamAll(excludeInactive)
-                .filter(service
-                        -> (isEmpty(modes) || !disjoint(modes, service.getModes()))
-                && (isEmpty(serviceIds) || serviceIds.stream().anyMatch(service.getId()::equalsIgnoreCase))
-                && (isEmpty(apis) || service.getApis().containsAll(apis))
-                )
-                .collect(Collectors.toList());
+        return search(new SearchQuery(modes, apis, excludeInactive, serviceIds)).getServices();
+    }
+
+    /**
+     * Searches for services that match the given query.
+     *
+     * @param query
+     * @return The (possibly cached) result of the search.
+     */
+    public SearchCache.Result search(SearchQuery query) {
+        var result = lookup(query);
+        countHit(result);
+        return result;
+    }
+
+    /**
+     * Searches for services that match the given query and filters or sorts
+     * them by the round-trip times of their availability checks or the age of
+     * their state. Only the search itself is cached, because these change with
+     * every check.
+     *
+     * @param query
+     * @param maxLatencyMillis If not null, only services whose average
+     * round-trip time is at most this many millis are returned. Services that
+     * were not checked yet are left out.
+     * @param sortByLatency Whether to sort the services by their average
+     * round-trip time, fastest first. Services that were not checked yet come
+     * last.
+     * @param maxStalenessMillis If not null, only services whose state was
+     * confirmed at most this many millis ago are returned.
+     * @return
+     */
+    public List<ServiceEntry> searchByHealth(SearchQuery query, Long maxLatencyMillis, boolean sortByLatency, Long maxStalenessMillis) {
+        var searched = search(query);
+        var entries = searched.getEntries();
+
+        if (maxLatencyMillis == null && !sortByLatency && maxStalenessMillis == null) {
+            return entries;
+        }
+
+        var stream = entries.stream();
+
+        if (maxLatencyMillis != null) {
+            stream = stream.filter(entry -> entry.getLatency().getEwmaMillis() <= maxLatencyMillis);
+        }
+
+        if (maxStalenessMillis != null) {
+            var oldest = System.currentTimeMillis() - maxStalenessMillis;
+            stream = stream.filter(entry -> entry.getState().getLastUpdateMillis() >= oldest);
+        }
+
+        var result = stream.collect(toList());
+
+        if (sortByLatency) {
+            sortByLatency(result);
+        }
+
+        return result;
+    }
+
+    private static void sortByLatency(List<ServiceEntry> entries) {
+        // Each average is read only once, because checks keep changing them while
+        // sorting, which would break the contract of the comparator.
+        var latencies = new IdentityHashMap<ServiceEntry, Double>();
+        entries.forEach(entry -> latencies.put(entry, entry.getLatency().getEwmaMillis()));
+
+        // NaN sorts last, which puts unchecked services at the end.
+        entries.sort(Comparator.comparing(latencies::get));
+    }
+
+    private SearchCache.Result lookup(SearchQuery query) {
+        var snapshot = registry.getSnapshot();
+        return cache.getOrCompute(query, snapshot.getVersion(), () -> select(snapshot, query));
+    }
+
+    /**
+     * Counts a search that was answered as not modified without running it.
+     * The search only counts if its result is still cached, so that this
+     * never computes a result.
+     *
+     * @param query
+     * @param version The version of the snapshot the client's result was
+     * computed from.
+     */
+    public void countNotModified(SearchQuery query, long version) {
+        var result = cache.peek(query, version);
+
+        if (result != null) {
+            countHit(result);
+        }
+    }
+
+    private void countHit(SearchCache.Result result) {
+        cache.hit(result);
+
+        var handler = revalidator;
+        var now = System.currentTimeMillis();
+
+        if (handler == null || !result.tryStartStaleScan(now, staleScanIntervalMillis)) {
+            return;
+        }
+
+        for (var entry : result.getEntries()) {
+            // Entries without a deadline are being checked right now.
+            var dueAt = CheckSchedule.getDueAt(entry);
+
+            if (dueAt >= 0 && dueAt < now) {
+                handler.accept(entry);
+            }
+        }
+    }
+
+    /**
+     * Spreads the searches counted since the last call to the
+     * {@link DemandCounter}s of the services they returned. To be called
+     * before the demand of the services is read.
+     */
+    public void spreadDemand() {
+        cache.spreadHits();
+    }
+
+    private List<ServiceEntry> select(RegistrySnapshot snapshot, SearchQuery query) {
+        if (query.getServiceIds().isEmpty()) {
+            return snapshot.entriesOf(snapshot.select(query.getModes(), query.getApis(), query.isExcludeInactive()));
+        } else {
+            return snapshot.selectByIds(query.getServiceIds(), query.getModes(), query.getApis(), query.isExcludeInactive());
+        }
     }
 
     /**
@@ -84,4 +257,11 @@ public class MobilityServiceFinder {
     public List<MobilityService> searchByModes(Set<Mode> modes) {
         return search(modes, null, true, null);
     }
+
+    /**
+     * @return Statistics about the usage of the search result cache.
+     */
+    public SearchCache.Statistics getCacheStatistics() {
+        return cache.getStatistics();
+    }
 }
@@ -26,21 +26,42 @@ package de.hsesslingen.keim.efs.servicedirectory.core;
 import static de.hsesslingen.keim.efs.mobility.exception.HttpException.*;
 
 import de.hsesslingen.keim.efs.mobility.service.MobilityService;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.time.Instant;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
+import javax.annotation.PostConstruct;
 import static org.apache.commons.lang3.StringUtils.isBlank;
-import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 /**
  * Utility class with CRUD functionalities for {@link MobilityService} Currently
  * a list of registered services are load by configuration properties. Therefore
  * the services cannot not be deleted or updated.
+ * <p>
+ * This registry is safe for concurrent use. Reading methods never lock and
+ * writers never block readers. Each service is stored in a single
+ * {@link ServiceEntry} together with its activity state, so both can never
+ * drift apart.
+ * <p>
+ * Writers are serialized and publish an immutable {@link RegistrySnapshot} of
+ * all entries after each mutation. Readers that iterate the registry only
+ * read the current snapshot reference and then work on that snapshot. Flips
+ * of the activity state of a service also publish a new snapshot, so the
+ * active bitmap of the snapshot index stays up to date.
+ * <p>
+ * All changes are recorded in a bounded {@link ChangeLog}, from which clients
+ * can fetch the changes since a given sequence number. Change listeners are
+ * notified of each change in the order of their sequence numbers.
  *
  * @author k.sivarasah 12 Sep 2019
  */
@@ -49,8 +70,100 @@ public class MobilityServiceRegistry {
 
     private static final Logger logger = LoggerFactory.getLogger(MobilityServiceRegistry.class);
 
-    private final Map<String, MobilityService> services = new HashMap<>();
-    private final Map<String, ActivityState> activityStateMap = new HashMap();
+    private final Object writeLock = new Object();
+    private final ConcurrentMap<String, ServiceEntry> entries = new ConcurrentHashMap<>();
+
+    private volatile RegistrySnapshot snapshot = RegistrySnapshot.EMPTY;
+
+    @Value("${service-directory.change-log.capacity:4096}")
+    private int changeLogCapacity;
+
+    private ChangeLog changeLog;
+
+    private final CopyOnWriteArrayList<Consumer<ServiceChange>> changeListeners = new CopyOnWriteArrayList<>();
+
+    @PostConstruct
+    public void init() {
+        changeLog = new ChangeLog(changeLogCapacity);
+    }
+
+    /**
+     * Returns the current immutable snapshot of all registered services.
+     *
+     * @return The current {@link RegistrySnapshot}
+     */
+    public RegistrySnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Returns the version of the current snapshot. The version increases with
+     * every registration, update and deletion.
+     *
+     * @return
+     */
+    public long getVersion() {
+        return snapshot.getVersion();
+    }
+
+    /**
+     * Adds a listener that gets notified of every change of this registry.
+     * Listeners are called while the registry is locked for writing, so they
+     * must return quickly and must not block.
+     *
+     * @param listener
+     */
+    public void addChangeListener(Consumer<ServiceChange> listener) {
+        changeListeners.add(listener);
+    }
+
+    public void removeChangeListener(Consumer<ServiceChange> listener) {
+        changeListeners.remove(listener);
+    }
+
+    /**
+     * Returns the changes of the registry since the given sequence number.
+     *
+     * @param since
+     * @return
+     */
+    public ChangeFeed getChangesSince(long since) {
+        return getChangesSince(null, since);
+    }
+
+    /**
+     * @return The sequence number of the latest change of the registry, or
+     * zero if there was none yet.
+     */
+    public long getSequence() {
+        return changeLog.getSequence();
+    }
+
+    /**
+     * @return The epoch of the change log, which changes when the service
+     * directory restarts. See {@link ChangeFeed#getEpoch()}.
+     */
+    public long getEpoch() {
+        return changeLog.getEpoch();
+    }
+
+    /**
+     * Returns the changes of the registry since the given sequence number. If
+     * an epoch is given that differs from the epoch of the change log, e.g.
+     * because the service directory restarted, a resync is required.
+     *
+     * @param epoch The epoch of the feed the sequence number was taken from,
+     * or null if unknown.
+     * @param since
+     * @return
+     */
+    public ChangeFeed getChangesSince(Long epoch, long since) {
+        if (since < 0) {
+            throw badRequest("The sequence number must not be negative.");
+        }
+
+        return epoch == null ? changeLog.since(since) : changeLog.since(epoch, since);
+    }
 
     /**
      * Returns a collection of services that are registered in the service
@@ -59,7 +172,7 @@ public class MobilityServiceRegistry {
      * @return Collection of {@link MobilityService}s
      */
     public Collection<MobilityService> getAll() {
-        return services.values();
+        return snapshot.getServices();
     }
 
     /**
@@ -69,7 +182,7 @@ public class MobilityServiceRegistry {
      * @return Collection of {@link MobilityService}s
      */
     public Stream<MobilityService> streamAll() {
-        return services.values().stream();
+        return streamEntries().map(ServiceEntry::getService);
     }
 
     /**
@@ -80,20 +193,42 @@ public class MobilityServiceRegistry {
      * @return Stream of {@link MobilityService}s
      */
     public Stream<MobilityService> streamAll(boolean excludeInactive) {
+        return streamEntries(excludeInactive).map(ServiceEntry::getService);
+    }
+
+    /**
+     * Returns a stream of the entries of all registered services.
+     *
+     * @return Stream of {@link ServiceEntry}s
+     */
+    public Stream<ServiceEntry> streamEntries() {
+        return snapshot.stream();
+    }
+
+    /**
+     * Returns a stream of the entries of all registered services.
+     *
+     * @param excludeInactive Whether entries of inactive services should be
+     * excluded right away.
+     * @return Stream of {@link ServiceEntry}s
+     */
+    public Stream<ServiceEntry> streamEntries(boolean excludeInactive) {
         if (excludeInactive) {
-            return streamAll().filter(s -> isActive(s.getId()));
+            return streamEntries().filter(ServiceEntry::isActive);
         } else {
-            return streamAll();
+            return streamEntries();
         }
     }
 
     /**
-     * Creates a stream of pairs of services and their current activity states.
+     * Returns the entry of the service with the given id. If the service is not
+     * registered, this method returns null.
      *
+     * @param serviceId
      * @return
      */
-    public Stream<Pair<MobilityService, ActivityState>> streamServiceStates() {
-        return streamAll().map(s -> Pair.of(s, getServiceState(s.getId())));
+    public ServiceEntry getEntry(String serviceId) {
+        return entries.get(serviceId);
     }
 
     /**
@@ -104,7 +239,8 @@ public class MobilityServiceRegistry {
      * @return
      */
     public ActivityState getServiceState(String serviceId) {
-        return activityStateMap.get(serviceId);
+        var entry = entries.get(serviceId);
+        return entry == null ? null : entry.getState();
     }
 
     /**
@@ -114,13 +250,59 @@ public class MobilityServiceRegistry {
      * @return The MobilityService
      */
     public MobilityService getById(String id) {
-        var service = services.get(id);
+        return getEntryById(id).getService();
+    }
 
-        if (service == null) {
+    /**
+     * Returns the {@link ServiceEntry} of the service with the specified id
+     *
+     * @param id Unique identifier of a service
+     * @return The entry of the service
+     */
+    public ServiceEntry getEntryById(String id) {
+        var entry = entries.get(id);
+
+        if (entry == null) {
             throw notFound("Service with id [%s] not found", id);
         }
 
-        return service;
+        return entry;
+    }
+
+    /**
+     * Returns the {@link MobilityService} with the specified id, ignoring the
+     * case of the id. An exact match is preferred over matches that differ in
+     * case.
+     *
+     * @param id Identifier of a service in any case
+     * @return The MobilityService
+     */
+    public MobilityService getByIdIgnoreCase(String id) {
+        return getEntryByIdIgnoreCase(id).getService();
+    }
+
+    /**
+     * Returns the {@link ServiceEntry} of the service with the specified id,
+     * ignoring the case of the id. An exact match is preferred over matches
+     * that differ in case.
+     *
+     * @param id Identifier of a service in any case
+     * @return The entry of the service
+     */
+    public ServiceEntry getEntryByIdIgnoreCase(String id) {
+        var entry = entries.get(id);
+
+        if (entry != null) {
+            return entry;
+        }
+
+        var matches = snapshot.findByIdIgnoreCase(id);
+
+        if (matches.isEmpty()) {
+            throw notFound("Service with id [%s] not found", id);
+        }
+
+        return matches.get(0);
     }
 
     /**
@@ -130,8 +312,8 @@ public class MobilityServiceRegistry {
      * @return
      */
     public boolean isActive(String serviceId) {
-        var state = activityStateMap.get(serviceId);
-        return state == null ? false : state.isActive();
+        var entry = entries.get(serviceId);
+        return entry == null ? false : entry.isActive();
     }
 
     /**
@@ -142,8 +324,10 @@ public class MobilityServiceRegistry {
      * @param value
      */
     public void setActive(String serviceId, boolean value) {
-        if (activityStateMap.containsKey(serviceId)) {
-            activityStateMap.get(serviceId).setActive(value);
+        var entry = entries.get(serviceId);
+
+        if (entry != null) {
+            entry.getState().setActive(value);
         }
     }
 
@@ -154,9 +338,7 @@ public class MobilityServiceRegistry {
      * @param serviceId
      */
     public void markActive(String serviceId) {
-        if (services.containsKey(serviceId)) {
-            activityStateMap.get(serviceId).markActive();
-        }
+        setActive(serviceId, true);
     }
 
     /**
@@ -166,9 +348,7 @@ public class MobilityServiceRegistry {
      * @param serviceId
      */
     public void markInactive(String serviceId) {
-        if (services.containsKey(serviceId)) {
-            activityStateMap.get(serviceId).markInactive();
-        }
+        setActive(serviceId, false);
     }
 
     /**
@@ -186,12 +366,47 @@ public class MobilityServiceRegistry {
             throw badRequest("The provided service does not have an id.");
         }
 
-        services.put(id, service);
-        activityStateMap.put(id, ActivityState.active());
+        var entry = new ServiceEntry(service, this::activityChanged);
+
+        synchronized (writeLock) {
+            entries.put(id, entry);
+            snapshot = snapshot.with(entry);
+            recordChange(ServiceChange.Type.REGISTERED, id, service, true);
+        }
 
         return service;
     }
 
+    /**
+     * Registers all the provided services in the registry at once. Readers
+     * will see either none or all of them.
+     *
+     * @param services
+     */
+    public void registerAll(Collection<MobilityService> services) {
+        logger.info("Registering " + services.size() + " mobility services...");
+
+        for (var service : services) {
+            if (isBlank(service.getId())) {
+                throw badRequest("The provided service does not have an id.");
+            }
+        }
+
+        synchronized (writeLock) {
+            var next = new LinkedHashMap<String, ServiceEntry>();
+            snapshot.stream().forEach(e -> next.put(e.getId(), e));
+
+            for (var service : services) {
+                var entry = new ServiceEntry(service, this::activityChanged);
+                entries.put(entry.getId(), entry);
+                next.put(entry.getId(), entry);
+                recordChange(ServiceChange.Type.REGISTERED, entry.getId(), service, true);
+            }
+
+            snapshot = snapshot.replacedBy(next.values().toArray(ServiceEntry[]::new));
+        }
+    }
+
     /**
      * Updates the provided service in the registry.
      *
@@ -202,17 +417,55 @@ public class MobilityServiceRegistry {
     public MobilityService update(String id, MobilityService service) {
         logger.info("Updating registered service with id " + id);
 
-        if (!services.containsKey(id)) {
-            throw notFound("Service with id [%s] not found", id);
-        }
+        synchronized (writeLock) {
+            var entry = entries.get(id);
 
-        service.setId(id);
-        services.put(id, service);
-        activityStateMap.get(id).markActive();
+            if (entry == null) {
+                throw notFound("Service with id [%s] not found", id);
+            }
+
+            service.setId(id);
+            entry.setService(service);
+            entry.getState().markActive();
+            snapshot = snapshot.touched();
+            recordChange(ServiceChange.Type.UPDATED, id, service, true);
+        }
 
         return service;
     }
 
+    /**
+     * Replaces the service of the given entry with the service info reported
+     * by the service itself, if its content differs. Unlike
+     * {@link #update(String, MobilityService)}, this leaves the activity state
+     * alone and does nothing at all if the content is the same, so that
+     * neither the version of the registry changes nor caches get invalidated.
+     *
+     * @param entry
+     * @param service Must have the id of the entry.
+     * @return Whether the service of the entry was replaced. False also if the
+     * entry is no longer registered.
+     */
+    public boolean refresh(ServiceEntry entry, MobilityService service) {
+        if (!entry.getId().equals(service.getId())) {
+            throw new IllegalArgumentException("The id of the service does not match the id of the entry.");
+        }
+
+        synchronized (writeLock) {
+            if (entries.get(entry.getId()) != entry || entry.hasSameService(service)) {
+                return false;
+            }
+
+            logger.info("Refreshing registered service with id " + entry.getId());
+
+            entry.setService(service);
+            snapshot = snapshot.touched();
+            recordChange(ServiceChange.Type.UPDATED, entry.getId(), service, entry.isActive());
+        }
+
+        return true;
+    }
+
     /**
      * Deletes the services with the given id.
      *
@@ -220,8 +473,57 @@ public class MobilityServiceRegistry {
      */
     public void delete(String id) {
         logger.info("Deleting service with id " + id);
-        services.remove(id);
-        activityStateMap.remove(id);
+
+        synchronized (writeLock) {
+            var entry = entries.remove(id);
+
+            if (entry != null) {
+                snapshot = snapshot.without(id);
+                recordChange(ServiceChange.Type.DELETED, id, entry.getService(), false);
+            }
+        }
+    }
+
+    /**
+     * Called after each flip of the "active" flag of an entry. Whether a change
+     * gets recorded is decided by the flag last recorded for the entry, not by
+     * the active bitmap of the snapshot, because snapshots published by other
+     * writers since the flip may already contain the new flag.
+     */
+    private void activityChanged(ServiceEntry entry) {
+        synchronized (writeLock) {
+            if (entries.get(entry.getId()) != entry) {
+                return;
+            }
+
+            snapshot = snapshot.withActivityOf(entry);
+
+            // Flips that got undone before this call record nothing. Out of order
+            // calls of concurrent flips are fine, as the latest call reads the latest flag.
+            var active = entry.isActive();
+
+            if (active != entry.isRecordedActive()) {
+                entry.setRecordedActive(active);
+                var type = active ? ServiceChange.Type.ACTIVATED : ServiceChange.Type.DEACTIVATED;
+                recordChange(type, entry.getId(), entry.getService(), active);
+            }
+        }
+    }
+
+    /**
+     * Must be called while holding the write lock, so that changes are
+     * recorded and published in the order of their sequence numbers.
+     */
+    private void recordChange(ServiceChange.Type type, String serviceId, MobilityService service, boolean active) {
+        var change = changeLog.append(type, serviceId, service, active);
+
+        for (var listener : changeListeners) {
+            try {
+                listener.accept(change);
+            } catch (RuntimeException ex) {
+                logger.error("A change listener failed.", ex);
+            }
+        }
     }
 
     /**
@@ -229,42 +531,125 @@ public class MobilityServiceRegistry {
      */
     public void deleteAll() {
         logger.info("Deleting all registered services...");
-        services.clear();
-        activityStateMap.clear();
+
+        synchronized (writeLock) {
+            snapshot.stream().forEach(e -> recordChange(ServiceChange.Type.DELETED, e.getId(), e.getService(), false));
+            entries.clear();
+            snapshot = snapshot.replacedBy(new ServiceEntry[0]);
+        }
     }
 
+    /**
+     * The activity state of a registered service. The "active" flag and the
+     * epoch millis of the last update are packed into a single long value,
+     * which is only ever replaced as a whole using CAS operations. Readers
+     * therefore always see a flag together with its matching timestamp, and
+     * neither reading nor updating the state allocates any objects.
+     */
     public static class ActivityState {
 
-        private boolean active;
-        private Instant lastUpdate;
+        private static final VarHandle VALUE;
+
+        static {
+            try {
+                VALUE = MethodHandles.lookup().findVarHandle(ActivityState.class, "value", long.class);
+            } catch (ReflectiveOperationException ex) {
+                throw new ExceptionInInitializerError(ex);
+            }
+        }
+
+        /**
+         * The epoch millis of the last update, shifted left by one bit. The
+         * lowest bit holds the "active" flag.
+         */
+        private volatile long value;
+
+        private final Runnable changeListener;
 
         public ActivityState(boolean active) {
-            this.active = active;
-            this.lastUpdate = Instant.now();
+            this(active, null);
+        }
+
+        /**
+         * @param active
+         * @param changeListener Called after each change of the "active" flag.
+         */
+        ActivityState(boolean active, Runnable changeListener) {
+            this.value = pack(active, System.currentTimeMillis());
+            this.changeListener = changeListener;
         }
 
+        /**
+         * Sets the "active" flag and the time of the last update to now.
+         *
+         * @param value
+         * @return This state.
+         */
         public ActivityState setActive(boolean value) {
-            this.active = value;
-            this.lastUpdate = Instant.now();
+            trySetActive(value);
             return this;
         }
 
+        /**
+         * Sets the "active" flag and the time of the last update to now.
+         *
+         * @param value
+         * @return Whether the "active" flag changed because of this call.
+         */
+        public boolean trySetActive(boolean value) {
+            var now = System.currentTimeMillis();
+
+            while (true) {
+                var current = this.value;
+
+                // Never move the timestamp backwards, e.g. if the clock was adjusted.
+                var next = pack(value, Math.max(now, unpackMillis(current)));
+
+                if (VALUE.compareAndSet(this, current, next)) {
+                    var changed = unpackActive(current) != value;
+
+                    if (changed && changeListener != null) {
+                        changeListener.run();
+                    }
+
+                    return changed;
+                }
+            }
+        }
+
         public ActivityState markInactive() {
-            setActive(false);
-            return this;
+            return setActive(false);
         }
 
         public ActivityState markActive() {
-            setActive(true);
-            return this;
+            return setActive(true);
         }
 
         public boolean isActive() {
-            return active;
+            return unpackActive(value);
+        }
+
+        /**
+         * @return The epoch millis of the last update of this state.
+         */
+        public long getLastUpdateMillis() {
+            return unpackMillis(value);
         }
 
         public Instant getLastUpdate() {
-            return lastUpdate;
+            return Instant.ofEpochMilli(getLastUpdateMillis());
+        }
+
+        /**
+         * Tests whether the last update of this state is longer ago than the
+         * given valid duration.
+         *
+         * @param validMillis The duration in millis for which a state is
+         * considered valid after its last update.
+         * @return
+         */
+        public boolean isDueForChecking(long validMillis) {
+            return getLastUpdateMillis() + validMillis < System.currentTimeMillis();
         }
 
         public static ActivityState active() {
@@ -274,6 +659,18 @@ public class MobilityServiceRegistry {
         public static ActivityState inactive() {
             return new ActivityState(false);
         }
+
+        private static long pack(boolean active, long epochMillis) {
+            return (epochMillis << 1) | (active ? 1L : 0L);
+        }
+
+        private static boolean unpackActive(long value) {
+            return (value & 1L) != 0L;
+        }
+
+        private static long unpackMillis(long value) {
+            return value >>> 1;
+        }
     }
 
 }
@@ -0,0 +1,304 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.servicedirectory.core;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Runs the availability probes of the {@link AvailabilityChecker} on an
+ * executor while limiting how many of them are in flight, both in total and
+ * per host.
+ * <p>
+ * Probes that can not start yet wait in a queue per host. Whenever a probe
+ * finishes, the hosts with waiting probes take turns, so that a single host
+ * with many services can not hold back the probes of all other hosts.
+ *
+ * @author keim
+ */
+public class ProbeDispatcher {
+
+    private final Executor executor;
+    private final int maxInFlight;
+    private final int maxInFlightPerHost;
+
+    private final Map<String, Host> hosts = new HashMap<>();
+
+    /**
+     * Hosts that have waiting probes and room for another one in flight.
+     */
+    private final ArrayDeque<Host> ready = new ArrayDeque<>();
+
+    private int inFlight;
+    private int queued;
+    private long completed;
+
+    /**
+     * @param executor The executor that runs the probes. It should be able to
+     * run maxInFlight probes at the same time.
+     * @param maxInFlight
+     * @param maxInFlightPerHost
+     */
+    public ProbeDispatcher(Executor executor, int maxInFlight, int maxInFlightPerHost) {
+        if (maxInFlight < 1 || maxInFlightPerHost < 1) {
+            throw new IllegalArgumentException("The limits of probes in flight must be positive.");
+        }
+
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+        this.maxInFlightPerHost = maxInFlightPerHost;
+    }
+
+    /**
+     * Determines the host used for the per-host limit of the service with the
+     * given URL, which is its host name and port.
+     *
+     * @param serviceUrl
+     * @return
+     */
+    public static String hostOf(String serviceUrl) {
+        if (serviceUrl == null) {
+            return "";
+        }
+
+        try {
+            var uri = URI.create(serviceUrl.trim());
+
+            if (uri.getHost() != null) {
+                var host = uri.getHost().toLowerCase(Locale.ROOT);
+                return uri.getPort() < 0 ? host : host + ":" + uri.getPort();
+            }
+        } catch (IllegalArgumentException ex) {
+            // Falls back to the URL itself.
+        }
+
+        return serviceUrl;
+    }
+
+    /**
+     * Queues the given probe for execution as soon as the limits allow it.
+     *
+     * @param <T>
+     * @param host The host of the probed service, see {@link #hostOf(String)}.
+     * @param probe
+     * @return A future that completes with the result of the probe.
+     */
+    public <T> CompletableFuture<T> submit(String host, Supplier<T> probe) {
+        var task = new Task<>(probe);
+
+        synchronized (this) {
+            var h = hosts.computeIfAbsent(host, Host::new);
+            h.waiting.add(task);
+            queued++;
+
+            if (!h.ready && h.inFlight < maxInFlightPerHost) {
+                h.ready = true;
+                ready.add(h);
+            }
+        }
+
+        dispatch();
+
+        return task.future;
+    }
+
+    /**
+     * Starts as many waiting probes as the limits allow.
+     */
+    private void dispatch() {
+        while (true) {
+            Host host;
+            Task<?> task;
+
+            synchronized (this) {
+                if (inFlight >= maxInFlight || ready.isEmpty()) {
+                    return;
+                }
+
+                host = ready.poll();
+                task = host.waiting.poll();
+                host.inFlight++;
+                inFlight++;
+                queued--;
+
+                // Round robin: the host goes to the back if it may run even more probes.
+                if (!host.waiting.isEmpty() && host.inFlight < maxInFlightPerHost) {
+                    ready.add(host);
+                } else {
+                    host.ready = false;
+                }
+            }
+
+            try {
+                executor.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        released(host);
+                        dispatch();
+                    }
+                });
+            } catch (RuntimeException ex) {
+                // E.g. the executor is shut down.
+                released(host);
+                task.future.completeExceptionally(ex);
+            }
+        }
+    }
+
+    private void released(Host host) {
+        synchronized (this) {
+            host.inFlight--;
+            inFlight--;
+            completed++;
+
+            if (host.waiting.isEmpty()) {
+                if (host.inFlight == 0) {
+                    hosts.remove(host.name);
+                }
+            } else if (!host.ready) {
+                host.ready = true;
+                ready.add(host);
+            }
+        }
+    }
+
+    /**
+     * @return The number of probes waiting for the limits to allow them.
+     */
+    public synchronized int getQueued() {
+        return queued;
+    }
+
+    public synchronized Statistics getStatistics() {
+        int backloggedHosts = 0;
+        int maxHostBacklog = 0;
+
+        for (var host : hosts.values()) {
+            if (!host.waiting.isEmpty()) {
+                backloggedHosts++;
+                maxHostBacklog = Math.max(maxHostBacklog, host.waiting.size());
+            }
+        }
+
+        return new Statistics(inFlight, maxInFlight, maxInFlightPerHost, queued, backloggedHosts, maxHostBacklog, completed);
+    }
+
+    private static class Host {
+
+        private final String name;
+        private final ArrayDeque<Task<?>> waiting = new ArrayDeque<>();
+        private int inFlight;
+        private boolean ready;
+
+        Host(String name) {
+            this.name = name;
+        }
+    }
+
+    private static class Task<T> {
+
+        private final Supplier<T> probe;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        Task(Supplier<T> probe) {
+            this.probe = probe;
+        }
+
+        void run() {
+            try {
+                future.complete(probe.get());
+            } catch (Throwable ex) {
+                future.completeExceptionally(ex);
+            }
+        }
+    }
+
+    /**
+     * Statistics about the probes of a {@link ProbeDispatcher}.
+     */
+    public static class Statistics {
+
+        private final int inFlight;
+        private final int maxInFlight;
+        private final int maxInFlightPerHost;
+        private final int queued;
+        private final int backloggedHosts;
+        private final int maxHostBacklog;
+        private final long completed;
+
+        public Statistics(int inFlight, int maxInFlight, int maxInFlightPerHost, int queued, int backloggedHosts, int maxHostBacklog, long completed) {
+            this.inFlight = inFlight;
+            this.maxInFlight = maxInFlight;
+            this.maxInFlightPerHost = maxInFlightPerHost;
+            this.queued = queued;
+            this.backloggedHosts = backloggedHosts;
+            this.maxHostBacklog = maxHostBacklog;
+            this.completed = completed;
+        }
+
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        public int getMaxInFlight() {
+            return maxInFlight;
+        }
+
+        public int getMaxInFlightPerHost() {
+            return maxInFlightPerHost;
+        }
+
+        /**
+         * @return The number of probes waiting for the limits to allow them.
+         */
+        public int getQueued() {
+            return queued;
+        }
+
+        /**
+         * @return The number of hosts with waiting probes.
+         */
+        public int getBackloggedHosts() {
+            return backloggedHosts;
+        }
+
+        /**
+         * @return The largest number of probes waiting for a single host.
+         */
+        public int getMaxHostBacklog() {
+            return maxHostBacklog;
+        }
+
+        public long getCompleted() {
+            return completed;
+        }
+    }
+}
@@ -0,0 +1,335 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.servicedirectory.core;
+
+import de.hsesslingen.keim.efs.mobility.service.MobilityService;
+import de.hsesslingen.keim.efs.mobility.service.MobilityService.API;
+import de.hsesslingen.keim.efs.mobility.service.Mode;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * An immutable, versioned view of all entries of the
+ * {@link MobilityServiceRegistry}. The registry publishes a new snapshot on
+ * every mutation, so readers can iterate a snapshot without any locking and
+ * without being affected by concurrent writers.
+ * <p>
+ * Each snapshot carries a {@link ServiceIndex} of the modes and APIs of its
+ * entries and a bitmap of the entries that were active when the snapshot was
+ * published. A change of the activity of a service publishes a new snapshot
+ * that shares everything but this bitmap with its predecessor.
+ *
+ * @author keim
+ */
+public class RegistrySnapshot {
+
+    static final RegistrySnapshot EMPTY = new RegistrySnapshot(0, new ServiceEntry[0]);
+
+    private final long version;
+    private final ServiceEntry[] entries;
+    private final ServiceIndex index;
+    private final long[] activeBits;
+
+    private final List<ServiceEntry> entryList;
+    private final List<MobilityService> serviceList;
+
+    RegistrySnapshot(long version, ServiceEntry[] entries) {
+        this(version, entries, new ServiceIndex(entries), new long[ServiceIndex.words(entries.length)]);
+
+        for (int i = 0; i < entries.length; i++) {
+            entries[i].setSlot(i);
+
+            if (entries[i].isActive()) {
+                ServiceIndex.set(activeBits, i);
+            }
+        }
+    }
+
+    private RegistrySnapshot(long version, ServiceEntry[] entries, ServiceIndex index, long[] activeBits) {
+        this.version = version;
+        this.entries = entries;
+        this.index = index;
+        this.activeBits = activeBits;
+        this.entryList = new EntryList();
+        this.serviceList = new ServiceList();
+    }
+
+    /**
+     * The version of this snapshot. Each new snapshot published by the
+     * registry has a higher version than its predecessor.
+     *
+     * @return
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public int size() {
+        return entries.length;
+    }
+
+    public ServiceEntry get(int index) {
+        return entries[index];
+    }
+
+    public Stream<ServiceEntry> stream() {
+        return Arrays.stream(entries);
+    }
+
+    /**
+     * @return An unmodifiable list view of the entries in this snapshot.
+     */
+    public List<ServiceEntry> getEntries() {
+        return entryList;
+    }
+
+    /**
+     * @return An unmodifiable list view of the services in this snapshot.
+     */
+    public List<MobilityService> getServices() {
+        return serviceList;
+    }
+
+    /**
+     * Selects the entries that support at least one of the given modes and all
+     * of the given APIs. Empty or null sets do not restrict the result.
+     *
+     * @param modes
+     * @param apis
+     * @param excludeInactive Whether entries that were inactive when this
+     * snapshot was published should be excluded.
+     * @return A bitmap of the selected entries, see {@link #entriesOf(long[])}.
+     */
+    public long[] select(Set<Mode> modes, Set<API> apis, boolean excludeInactive) {
+        var bits = index.select(modes, apis);
+
+        if (excludeInactive) {
+            ServiceIndex.and(bits, activeBits);
+        }
+
+        return bits;
+    }
+
+    /**
+     * Selects the entries whose id equals one of the given ids, ignoring case,
+     * and that support at least one of the given modes and all of the given
+     * APIs. The effort only depends on the number of given ids, not on the
+     * size of this snapshot.
+     *
+     * @param ids
+     * @param modes
+     * @param apis
+     * @param excludeInactive Whether entries that were inactive when this
+     * snapshot was published should be excluded.
+     * @return
+     */
+    public List<ServiceEntry> selectByIds(Collection<String> ids, Set<Mode> modes, Set<API> apis, boolean excludeInactive) {
+        var result = new ArrayList<ServiceEntry>(ids.size());
+        var seen = new HashSet<String>(ids.size() * 4 / 3 + 1);
+
+        for (var id : ids) {
+            // Skip ids that only differ in case from an already processed one.
+            if (id == null || !seen.add(ServiceIndex.foldId(id))) {
+                continue;
+            }
+
+            for (var slot : index.slotsOfIdIgnoreCase(id)) {
+                if ((!excludeInactive || ServiceIndex.get(activeBits, slot)) && index.matches(slot, modes, apis)) {
+                    result.add(entries[slot]);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Finds the entries whose id equals the given id, ignoring case.
+     *
+     * @param id
+     * @return The matching entries, usually none or one.
+     */
+    public List<ServiceEntry> findByIdIgnoreCase(String id) {
+        var slots = index.slotsOfIdIgnoreCase(id);
+        var result = new ArrayList<ServiceEntry>(slots.length);
+
+        for (var slot : slots) {
+            result.add(entries[slot]);
+        }
+
+        return result;
+    }
+
+    /**
+     * Collects the entries whose bits are set in the given bitmap, which must
+     * have been created by {@link #select(Set, Set, boolean)} of this
+     * snapshot.
+     *
+     * @param bits
+     * @return
+     */
+    public List<ServiceEntry> entriesOf(long[] bits) {
+        var result = new ArrayList<ServiceEntry>(ServiceIndex.cardinality(bits));
+
+        for (int w = 0; w < bits.length; w++) {
+            var word = bits[w];
+
+            while (word != 0L) {
+                result.add(entries[(w << 6) + Long.numberOfTrailingZeros(word)]);
+                word &= word - 1;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Creates the successor of this snapshot in which the bit of the given
+     * entry in the active bitmap reflects the current activity of the entry.
+     * Returns this snapshot if the entry is not part of it or its bit is
+     * already correct.
+     */
+    RegistrySnapshot withActivityOf(ServiceEntry entry) {
+        if (!contains(entry)) {
+            return this;
+        }
+
+        var slot = entry.getSlot();
+        var active = entry.isActive();
+
+        if (ServiceIndex.get(activeBits, slot) == active) {
+            return this;
+        }
+
+        var nextBits = activeBits.clone();
+
+        if (active) {
+            ServiceIndex.set(nextBits, slot);
+        } else {
+            ServiceIndex.clear(nextBits, slot);
+        }
+
+        return new RegistrySnapshot(version + 1, entries, index, nextBits);
+    }
+
+    /**
+     * Creates the successor of this snapshot with the given entry added or, if
+     * an entry with the same id exists, replaced.
+     */
+    RegistrySnapshot with(ServiceEntry entry) {
+        var index = indexOf(entry.getId());
+
+        ServiceEntry[] next;
+
+        if (index < 0) {
+            next = Arrays.copyOf(entries, entries.length + 1);
+            next[entries.length] = entry;
+        } else {
+            next = entries.clone();
+            next[index] = entry;
+        }
+
+        return new RegistrySnapshot(version + 1, next);
+    }
+
+    /**
+     * Creates the successor of this snapshot without the entry with the given
+     * id.
+     */
+    RegistrySnapshot without(String id) {
+        var index = indexOf(id);
+
+        if (index < 0) {
+            return this;
+        }
+
+        var next = new ServiceEntry[entries.length - 1];
+        System.arraycopy(entries, 0, next, 0, index);
+        System.arraycopy(entries, index + 1, next, index, next.length - index);
+
+        return new RegistrySnapshot(version + 1, next);
+    }
+
+    /**
+     * Creates the successor of this snapshot with the same entries, e.g. after
+     * an entry has been updated in place.
+     */
+    RegistrySnapshot touched() {
+        return new RegistrySnapshot(version + 1, entries);
+    }
+
+    /**
+     * Creates the successor of this snapshot with the given entries.
+     */
+    RegistrySnapshot replacedBy(ServiceEntry[] entries) {
+        return new RegistrySnapshot(version + 1, entries);
+    }
+
+    private boolean contains(ServiceEntry entry) {
+        var slot = entry.getSlot();
+        return slot >= 0 && slot < entries.length && entries[slot] == entry;
+    }
+
+    private int indexOf(String id) {
+        for (int i = 0; i < entries.length; i++) {
+            if (entries[i].getId().equals(id)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private class EntryList extends AbstractList<ServiceEntry> implements RandomAccess {
+
+        @Override
+        public ServiceEntry get(int index) {
+            return entries[index];
+        }
+
+        @Override
+        public int size() {
+            return entries.length;
+        }
+    }
+
+    private class ServiceList extends AbstractList<MobilityService> implements RandomAccess {
+
+        @Override
+        public MobilityService get(int index) {
+            return entries[index].getService();
+        }
+
+        @Override
+        public int size() {
+            return entries.length;
+        }
+    }
+}
@@ -0,0 +1,449 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.servicedirectory.core;
+
+import de.hsesslingen.keim.efs.mobility.service.MobilityService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A bounded cache of search results. Each result is tagged with the version of
+ * the {@link RegistrySnapshot} it was computed from. A result is only returned
+ * for the exact same version, so any change of the registry invalidates all
+ * cached results at once without touching the cache itself.
+ * <p>
+ * The cache does not take a cache-wide lock. If it grows beyond its maximum
+ * size, one thread at a time evicts outdated results first and then the least
+ * recently used ones.
+ * <p>
+ * Concurrent misses of the same query and version are coalesced: only the
+ * first caller computes the result, all others wait for and share it.
+ * <p>
+ * The hits of a result are counted once per search on the result itself and
+ * only spread to the {@link DemandCounter}s of its entries by
+ * {@link #spreadHits()}, so that a search answered from the cache does not
+ * touch every entry of its result.
+ *
+ * @author keim
+ */
+public class SearchCache {
+
+    private final int maxSize;
+    private final ConcurrentHashMap<SearchQuery, Result> results;
+    private final ConcurrentHashMap<Flight, CompletableFuture<Result>> flights = new ConcurrentHashMap<>();
+
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * @param maxSize The maximum number of cached results. If zero or
+     * negative, nothing gets cached.
+     */
+    public SearchCache(int maxSize) {
+        this.maxSize = Math.max(0, maxSize);
+        this.results = new ConcurrentHashMap<>(Math.max(16, this.maxSize * 4 / 3 + 1));
+    }
+
+    /**
+     * Returns the cached result for the given query and version. On a miss,
+     * the result is computed using the given supplier and cached. If another
+     * thread is already computing the same result, this method waits for that
+     * computation instead.
+     *
+     * @param query
+     * @param version The version of the snapshot the supplier selects from.
+     * @param supplier Selects the result entries from the snapshot with the
+     * given version.
+     * @return
+     */
+    public Result getOrCompute(SearchQuery query, long version, Supplier<List<ServiceEntry>> supplier) {
+        var cached = get(query, version);
+
+        if (cached != null) {
+            return cached;
+        }
+
+        var key = new Flight(query, version);
+        var flight = new CompletableFuture<Result>();
+        var running = flights.putIfAbsent(key, flight);
+
+        if (running != null) {
+            coalesced.increment();
+            return await(running);
+        }
+
+        try {
+            // The previous flight of this key might have finished just before ours started.
+            var result = peek(query, version);
+
+            if (result == null) {
+                result = put(query, version, supplier.get());
+            }
+
+            flight.complete(result);
+            return result;
+        } catch (RuntimeException | Error ex) {
+            flight.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            flights.remove(key, flight);
+        }
+    }
+
+    private static Result await(CompletableFuture<Result> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns the cached result for the given query and version, without
+     * counting it as a hit or miss of the cache.
+     *
+     * @param query
+     * @param version
+     * @return The cached result or null.
+     */
+    Result peek(SearchQuery query, long version) {
+        var result = results.get(query);
+        return result != null && result.version == version ? result : null;
+    }
+
+    /**
+     * Returns the cached result for the given query if it was computed from
+     * the snapshot with the given version.
+     *
+     * @param query
+     * @param version
+     * @return The cached result or null.
+     */
+    public Result get(SearchQuery query, long version) {
+        var result = results.get(query);
+
+        if (result == null || result.version != version) {
+            misses.increment();
+            return null;
+        }
+
+        result.lastAccess = clock.incrementAndGet();
+        hits.increment();
+        return result;
+    }
+
+    /**
+     * Caches the given result entries for the given query.
+     *
+     * @param query
+     * @param version The version of the snapshot the entries were selected
+     * from.
+     * @param entries
+     * @return The cached result, which is of a newer version than the given
+     * entries if such a result is cached already.
+     */
+    public Result put(SearchQuery query, long version, List<ServiceEntry> entries) {
+        var result = new Result(version, entries, clock.incrementAndGet());
+
+        if (maxSize == 0) {
+            // Nothing would spread the hits of the result later.
+            result.retire();
+            return result;
+        }
+
+        // Never replace a result of a newer version with an older one.
+        var cached = results.merge(query, result, (present, added) -> {
+            if (present.version > added.version) {
+                return present;
+            }
+
+            present.retire();
+            return added;
+        });
+
+        if (results.size() > maxSize) {
+            evict(version);
+        }
+
+        return cached;
+    }
+
+    private void evict(long currentVersion) {
+        if (!evicting.compareAndSet(false, true)) {
+            // Some other thread is already evicting.
+            return;
+        }
+
+        try {
+            // Outdated results will never be returned again.
+            results.entrySet().removeIf(e -> {
+                if (e.getValue().version < currentVersion) {
+                    e.getValue().retire();
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            });
+
+            var excess = results.size() - maxSize;
+
+            if (excess <= 0) {
+                return;
+            }
+
+            // Make some room beyond the limit, so that not every following put evicts again.
+            excess += maxSize / 8;
+
+            var candidates = new ArrayList<>(results.entrySet());
+            candidates.sort((a, b) -> Long.compare(a.getValue().lastAccess, b.getValue().lastAccess));
+
+            for (int i = 0; i < excess && i < candidates.size(); i++) {
+                var candidate = candidates.get(i);
+
+                if (results.remove(candidate.getKey(), candidate.getValue())) {
+                    candidate.getValue().retire();
+                    evictions.increment();
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    /**
+     * Counts a search answered with the given result.
+     *
+     * @param result
+     */
+    public void hit(Result result) {
+        result.hits.increment();
+
+        // Results that left the cache are no longer spread by spreadHits(), so they spread their own hits.
+        if (result.retired) {
+            result.spreadHits();
+        }
+    }
+
+    /**
+     * Spreads the hits counted on the cached results since the last call to
+     * the {@link DemandCounter}s of their entries.
+     */
+    public void spreadHits() {
+        results.values().forEach(Result::spreadHits);
+    }
+
+    public void clear() {
+        results.values().removeIf(result -> {
+            result.retire();
+            return true;
+        });
+    }
+
+    public Statistics getStatistics() {
+        return new Statistics(results.size(), maxSize, hits.sum(), misses.sum(), evictions.sum(), coalesced.sum());
+    }
+
+    /**
+     * A cached search result.
+     */
+    public static class Result {
+
+        private final long version;
+        private final List<ServiceEntry> entries;
+        private final List<MobilityService> services;
+
+        private final LongAdder hits = new LongAdder();
+        private final AtomicLong nextStaleScan = new AtomicLong();
+
+        private volatile long lastAccess;
+
+        /**
+         * Whether this result left the cache or never entered it.
+         */
+        private volatile boolean retired;
+
+        private Result(long version, List<ServiceEntry> entries, long lastAccess) {
+            this.version = version;
+            this.entries = Collections.unmodifiableList(entries);
+            this.lastAccess = lastAccess;
+
+            var services = new ArrayList<MobilityService>(entries.size());
+
+            for (var entry : entries) {
+                services.add(entry.getService());
+            }
+
+            this.services = Collections.unmodifiableList(services);
+        }
+
+        /**
+         * @return The version of the snapshot this result was computed from.
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        public List<ServiceEntry> getEntries() {
+            return entries;
+        }
+
+        public List<MobilityService> getServices() {
+            return services;
+        }
+
+        /**
+         * Claims the next scan of the entries of this result for stale
+         * states, if it is due.
+         *
+         * @param now Epoch millis.
+         * @param interval The minimum millis between two scans.
+         * @return Whether the calling thread is to scan the entries.
+         */
+        boolean tryStartStaleScan(long now, long interval) {
+            var next = nextStaleScan.get();
+            return now >= next && nextStaleScan.compareAndSet(next, now + interval);
+        }
+
+        /**
+         * Marks this result as no longer cached and spreads its hits. Hits
+         * counted concurrently either are spread here or see the mark and
+         * spread themselves.
+         */
+        private void retire() {
+            retired = true;
+            spreadHits();
+        }
+
+        private void spreadHits() {
+            var count = hits.sumThenReset();
+
+            if (count > 0) {
+                for (var entry : entries) {
+                    entry.getDemand().hit(count);
+                }
+            }
+        }
+    }
+
+    /**
+     * Statistics about the usage of a {@link SearchCache}.
+     */
+    public static class Statistics {
+
+        private final int size;
+        private final int maxSize;
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long coalesced;
+
+        public Statistics(int size, int maxSize, long hits, long misses, long evictions, long coalesced) {
+            this.size = size;
+            this.maxSize = maxSize;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.coalesced = coalesced;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        /**
+         * @return The number of misses that waited for the computation of
+         * another thread instead of computing the result themselves.
+         */
+        public long getCoalesced() {
+            return coalesced;
+        }
+
+        public double getHitRate() {
+            var total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+    }
+
+    /**
+     * The key of a running computation.
+     */
+    private static final class Flight {
+
+        private final SearchQuery query;
+        private final long version;
+
+        Flight(SearchQuery query, long version) {
+            this.query = query;
+            this.version = version;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(query, version);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Flight)) {
+                return false;
+            }
+
+            var other = (Flight) obj;
+            return version == other.version && query.equals(other.query);
+        }
+    }
+}
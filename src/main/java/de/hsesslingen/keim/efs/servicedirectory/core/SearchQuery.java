@@ -0,0 +1,123 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.servicedirectory.core;
+
+import de.hsesslingen.keim.efs.mobility.service.MobilityService.API;
+import de.hsesslingen.keim.efs.mobility.service.Mode;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The normalized parameters of a search of the {@link MobilityServiceFinder}.
+ * Two queries are equal if they select the same services, e.g. null and empty
+ * sets are treated alike and service ids are compared ignoring case.
+ *
+ * @author keim
+ */
+public final class SearchQuery {
+
+    private final Set<Mode> modes;
+    private final Set<API> apis;
+    private final boolean excludeInactive;
+    private final Set<String> serviceIds;
+    private final int hash;
+
+    public SearchQuery(Set<Mode> modes, Set<API> apis, boolean excludeInactive, Set<String> serviceIds) {
+        this.modes = modes == null || modes.isEmpty()
+                ? Collections.emptySet()
+                : Collections.unmodifiableSet(EnumSet.copyOf(modes));
+
+        this.apis = apis == null || apis.isEmpty()
+                ? Collections.emptySet()
+                : Collections.unmodifiableSet(EnumSet.copyOf(apis));
+
+        this.excludeInactive = excludeInactive;
+
+        if (serviceIds == null || serviceIds.isEmpty()) {
+            this.serviceIds = Collections.emptySet();
+        } else {
+            var folded = new TreeSet<String>();
+
+            for (var id : serviceIds) {
+                if (id != null) {
+                    folded.add(ServiceIndex.foldId(id));
+                }
+            }
+
+            this.serviceIds = Collections.unmodifiableSet(folded);
+        }
+
+        this.hash = Objects.hash(this.modes, this.apis, excludeInactive, this.serviceIds);
+    }
+
+    public Set<Mode> getModes() {
+        return modes;
+    }
+
+    public Set<API> getApis() {
+        return apis;
+    }
+
+    public boolean isExcludeInactive() {
+        return excludeInactive;
+    }
+
+    /**
+     * @return The case-folded service ids of this query.
+     */
+    public Set<String> getServiceIds() {
+        return serviceIds;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof SearchQuery)) {
+            return false;
+        }
+
+        var other = (SearchQuery) obj;
+
+        return hash == other.hash
+                && excludeInactive == other.excludeInactive
+                && modes.equals(other.modes)
+                && apis.equals(other.apis)
+                && serviceIds.equals(other.serviceIds);
+    }
+
+    @Override
+    public String toString() {
+        return "SearchQuery{modes=" + modes + ", apis=" + apis + ", excludeInactive=" + excludeInactive + ", serviceIds=" + serviceIds + '}';
+    }
+}
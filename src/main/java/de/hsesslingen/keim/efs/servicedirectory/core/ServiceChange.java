@@ -0,0 +1,95 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.servicedirectory.core;
+
+import de.hsesslingen.keim.efs.mobility.service.MobilityService;
+import java.time.Instant;
+
+/**
+ * A single change of the {@link MobilityServiceRegistry}, as recorded in its
+ * {@link ChangeLog}.
+ *
+ * @author keim
+ */
+public class ServiceChange {
+
+    public enum Type {
+        REGISTERED,
+        UPDATED,
+        DELETED,
+        ACTIVATED,
+        DEACTIVATED
+    }
+
+    private final long sequence;
+    private final Type type;
+    private final String serviceId;
+    private final MobilityService service;
+    private final boolean active;
+    private final Instant timestamp;
+
+    public ServiceChange(long sequence, Type type, String serviceId, MobilityService service, boolean active) {
+        this.sequence = sequence;
+        this.type = type;
+        this.serviceId = serviceId;
+        this.service = service;
+        this.active = active;
+        this.timestamp = Instant.now();
+    }
+
+    /**
+     * @return The sequence number of this change. Each change has a sequence
+     * number one higher than the change before.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getServiceId() {
+        return serviceId;
+    }
+
+    /**
+     * @return The service after the change. For deletions this is the service
+     * as it was before it got deleted.
+     */
+    public MobilityService getService() {
+        return service;
+    }
+
+    /**
+     * @return Whether the service was active after the change.
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.servicedirectory.core;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.hsesslingen.keim.efs.mobility.service.MobilityService;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * An unmodifiable list of the services of some registry entries, used as a
+ * response body. It is written as a JSON array of the services by
+ * concatenating the cached JSON of each entry, see {@link ServiceEntry#getJson}.
+ * Anything else sees a plain list of services, e.g. other message converters.
+ * <p>
+ * The JSON of the entries is resolved only once per body, so that the length
+ * of the body and the written bytes match, even if services get updated while
+ * the body is written.
+ *
+ * @author keim
+ */
+public class ServiceEntries extends AbstractList<MobilityService> implements RandomAccess {
+
+    private final List<ServiceEntry> entries;
+
+    private byte[][] json;
+
+    public ServiceEntries(List<ServiceEntry> entries) {
+        this.entries = entries;
+    }
+
+    public List<ServiceEntry> getEntries() {
+        return entries;
+    }
+
+    @Override
+    public MobilityService get(int index) {
+        return entries.get(index).getService();
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the JSON of each entry, as it was when this method was called
+     * first.
+     *
+     * @param mapper
+     * @return
+     * @throws JsonProcessingException
+     */
+    public byte[][] getJson(ObjectMapper mapper) throws JsonProcessingException {
+        if (json == null) {
+            var resolved = new byte[entries.size()][];
+
+            for (int i = 0; i < resolved.length; i++) {
+                resolved[i] = entries.get(i).getJson(mapper);
+            }
+
+            json = resolved;
+        }
+
+        return json;
+    }
+
+    public static ServiceEntries of(List<ServiceEntry> entries) {
+        return new ServiceEntries(entries);
+    }
+}
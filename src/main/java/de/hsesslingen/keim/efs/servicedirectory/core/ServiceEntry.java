@@ -0,0 +1,297 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.servicedirectory.core;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.hsesslingen.keim.efs.mobility.service.MobilityService;
+import de.hsesslingen.keim.efs.servicedirectory.core.MobilityServiceRegistry.ActivityState;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * The single record the {@link MobilityServiceRegistry} keeps per registered
+ * service. It holds the {@link MobilityService} itself together with its
+ * {@link ActivityState} and some metadata, so that searching and checking a
+ * service only needs to touch this one object.
+ * <p>
+ * An entry lives as long as its service is registered. Updates replace the
+ * service inside the entry but keep the entry and its state.
+ * <p>
+ * The entry also caches the JSON representation of its service, so that
+ * responses listing many services do not serialize them over and over again.
+ *
+ * @author keim
+ */
+public class ServiceEntry {
+
+    private final String id;
+    private final ActivityState state;
+    private final Instant registeredAt;
+
+    private volatile MobilityService service;
+    private volatile int serviceHash;
+    private volatile Instant lastModified;
+    private volatile Json json;
+
+    /**
+     * Set while an availability probe of this service is in flight.
+     */
+    private final AtomicBoolean probing = new AtomicBoolean();
+
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker();
+    private final FlapDamper flapDamper = new FlapDamper();
+    private final LatencyStats latency = new LatencyStats();
+    private final DemandCounter demand = new DemandCounter();
+
+    /**
+     * The index of this entry in the latest snapshot of the registry. Only
+     * used by the writers of the registry.
+     */
+    private int slot = -1;
+
+    /**
+     * The "active" flag of the latest activity change recorded for this entry.
+     * Only used by the writers of the registry.
+     */
+    private boolean recordedActive = true;
+
+    /**
+     * The current position of this entry in the {@link CheckSchedule}. Only
+     * used by the schedule.
+     */
+    private volatile CheckSchedule.Deadline deadline;
+
+    /**
+     * The current interval between the availability checks of this entry in
+     * millis or 0 if none was chosen yet. See {@link CheckIntervalPolicy}.
+     */
+    private volatile long checkInterval;
+
+    /**
+     * The validators for the next conditional availability check or null.
+     */
+    private volatile ProbeValidators probeValidators;
+
+    ServiceEntry(MobilityService service) {
+        this(service, null);
+    }
+
+    /**
+     * @param service
+     * @param activityListener Will be called with this entry whenever the
+     * "active" flag of its state flips.
+     */
+    ServiceEntry(MobilityService service, Consumer<ServiceEntry> activityListener) {
+        this.id = service.getId();
+        this.service = service;
+        this.serviceHash = service.hashCode();
+        this.state = activityListener == null
+                ? ActivityState.active()
+                : new ActivityState(true, () -> activityListener.accept(this));
+        this.registeredAt = Instant.now();
+        this.lastModified = registeredAt;
+    }
+
+    int getSlot() {
+        return slot;
+    }
+
+    void setSlot(int slot) {
+        this.slot = slot;
+    }
+
+    boolean isRecordedActive() {
+        return recordedActive;
+    }
+
+    void setRecordedActive(boolean recordedActive) {
+        this.recordedActive = recordedActive;
+    }
+
+    CheckSchedule.Deadline getDeadline() {
+        return deadline;
+    }
+
+    void setDeadline(CheckSchedule.Deadline deadline) {
+        this.deadline = deadline;
+    }
+
+    long getCheckInterval() {
+        return checkInterval;
+    }
+
+    void setCheckInterval(long checkInterval) {
+        this.checkInterval = checkInterval;
+    }
+
+    ProbeValidators getProbeValidators() {
+        return probeValidators;
+    }
+
+    void setProbeValidators(ProbeValidators probeValidators) {
+        this.probeValidators = probeValidators;
+    }
+
+    /**
+     * Replaces the service of this entry. Must only be called by the registry.
+     *
+     * @param service
+     */
+    void setService(MobilityService service) {
+        this.serviceHash = service.hashCode();
+        this.service = service;
+        this.lastModified = Instant.now();
+    }
+
+    /**
+     * Checks whether the given service has the same content as the service of
+     * this entry. Compares the cached hash of the service first, so that
+     * changed services are usually told apart without a full comparison.
+     *
+     * @param other
+     * @return
+     */
+    public boolean hasSameService(MobilityService other) {
+        var current = service;
+        return other == current || (other.hashCode() == serviceHash && other.equals(current));
+    }
+
+    /**
+     * Claims this entry for an availability probe.
+     *
+     * @return false if a probe of this entry is already in flight.
+     */
+    boolean tryStartProbe() {
+        return probing.compareAndSet(false, true);
+    }
+
+    void finishProbe() {
+        probing.set(false);
+    }
+
+    /**
+     * @return Whether an availability probe of this service is currently in
+     * flight.
+     */
+    public boolean isProbing() {
+        return probing.get();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public MobilityService getService() {
+        return service;
+    }
+
+    /**
+     * Returns the UTF-8 encoded JSON representation of the service of this
+     * entry. It is created on first use and cached until the service gets
+     * replaced. The returned array must not be modified.
+     *
+     * @param mapper The mapper used to create the JSON if it is not cached yet.
+     * @return
+     * @throws JsonProcessingException
+     */
+    public byte[] getJson(ObjectMapper mapper) throws JsonProcessingException {
+        var current = service;
+        var cached = json;
+
+        // The cached JSON is only valid for the service instance it was created from.
+        if (cached != null && cached.service == current) {
+            return cached.bytes;
+        }
+
+        var bytes = mapper.writeValueAsBytes(current);
+        json = new Json(current, bytes);
+
+        return bytes;
+    }
+
+    /**
+     * @return The circuit breaker of the availability checks of this service.
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * @return The flap damping of the availability checks of this service.
+     */
+    public FlapDamper getFlapDamper() {
+        return flapDamper;
+    }
+
+    /**
+     * @return The round-trip times of the availability checks of this
+     * service.
+     */
+    public LatencyStats getLatency() {
+        return latency;
+    }
+
+    /**
+     * @return How often this service appears in search results.
+     */
+    public DemandCounter getDemand() {
+        return demand;
+    }
+
+    public ActivityState getState() {
+        return state;
+    }
+
+    public boolean isActive() {
+        return state.isActive();
+    }
+
+    /**
+     * @return The point in time when this service was registered.
+     */
+    public Instant getRegisteredAt() {
+        return registeredAt;
+    }
+
+    /**
+     * @return The point in time of the last registration or update of this
+     * service.
+     */
+    public Instant getLastModified() {
+        return lastModified;
+    }
+
+    private static class Json {
+
+        private final MobilityService service;
+        private final byte[] bytes;
+
+        Json(MobilityService service, byte[] bytes) {
+            this.service = service;
+            this.bytes = bytes;
+        }
+    }
+}
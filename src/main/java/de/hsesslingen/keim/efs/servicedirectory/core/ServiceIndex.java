@@ -0,0 +1,228 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.servicedirectory.core;
+
+import de.hsesslingen.keim.efs.mobility.service.MobilityService.API;
+import de.hsesslingen.keim.efs.mobility.service.Mode;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable inverted index over the entries of a {@link RegistrySnapshot}.
+ * For each {@link Mode} and each {@link API} it holds a bitmap, in which bit
+ * {@code i} is set if the entry at index {@code i} of the snapshot supports
+ * that mode or API.
+ * <p>
+ * Bitmaps are plain {@code long[]} arrays with bit {@code i} stored in word
+ * {@code i >>> 6}. The static helpers of this class operate on such arrays.
+ * <p>
+ * Additionally the index maps the case-folded id of each entry to its index,
+ * so that entries can be found by id regardless of case without a scan.
+ *
+ * @author keim
+ */
+class ServiceIndex {
+
+    private static final Mode[] MODES = Mode.values();
+    private static final API[] APIS = API.values();
+    private static final int[] NO_SLOTS = new int[0];
+
+    private final int size;
+    private final long[][] modeBits;
+    private final long[][] apiBits;
+    private final Map<String, int[]> slotsByFoldedId;
+
+    ServiceIndex(ServiceEntry[] entries) {
+        this.size = entries.length;
+
+        var words = words(size);
+        this.modeBits = new long[MODES.length][words];
+        this.apiBits = new long[APIS.length][words];
+        this.slotsByFoldedId = new HashMap<>(entries.length * 4 / 3 + 1);
+
+        for (int i = 0; i < entries.length; i++) {
+            // Ids that only differ in case share the same folded id.
+            slotsByFoldedId.merge(foldId(entries[i].getId()), new int[]{i}, ServiceIndex::concat);
+
+            var service = entries[i].getService();
+
+            if (service.getModes() != null) {
+                for (var mode : service.getModes()) {
+                    set(modeBits[mode.ordinal()], i);
+                }
+            }
+
+            if (service.getApis() != null) {
+                for (var api : service.getApis()) {
+                    set(apiBits[api.ordinal()], i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a bitmap of all entries that support at least one of the given
+     * modes and all of the given APIs. Empty or null sets do not restrict the
+     * result.
+     *
+     * @param modes
+     * @param apis
+     * @return A new bitmap, which may be modified by the caller.
+     */
+    long[] select(Set<Mode> modes, Set<API> apis) {
+        long[] result;
+
+        if (modes == null || modes.isEmpty()) {
+            result = all(size);
+        } else {
+            result = new long[words(size)];
+
+            for (var mode : modes) {
+                or(result, modeBits[mode.ordinal()]);
+            }
+        }
+
+        if (apis != null) {
+            for (var api : apis) {
+                and(result, apiBits[api.ordinal()]);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Tests whether the entry at the given index supports at least one of the
+     * given modes and all of the given APIs. Empty or null sets do not
+     * restrict the result.
+     *
+     * @param index
+     * @param modes
+     * @param apis
+     * @return
+     */
+    boolean matches(int index, Set<Mode> modes, Set<API> apis) {
+        if (modes != null && !modes.isEmpty()) {
+            var anyMode = false;
+
+            for (var mode : modes) {
+                if (get(modeBits[mode.ordinal()], index)) {
+                    anyMode = true;
+                    break;
+                }
+            }
+
+            if (!anyMode) {
+                return false;
+            }
+        }
+
+        if (apis != null) {
+            for (var api : apis) {
+                if (!get(apiBits[api.ordinal()], index)) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the indexes of the entries whose id equals the given id, ignoring
+     * case.
+     *
+     * @param id
+     * @return The indexes, or an empty array if there are none.
+     */
+    int[] slotsOfIdIgnoreCase(String id) {
+        return slotsByFoldedId.getOrDefault(foldId(id), NO_SLOTS);
+    }
+
+    static String foldId(String id) {
+        return id.toLowerCase(Locale.ROOT);
+    }
+
+    static int words(int bits) {
+        return (bits + 63) >>> 6;
+    }
+
+    static long[] all(int bits) {
+        var result = new long[words(bits)];
+
+        for (int i = 0; i < result.length; i++) {
+            result[i] = -1L;
+        }
+
+        // Clear the bits beyond the last index.
+        if ((bits & 63) != 0) {
+            result[result.length - 1] = (1L << bits) - 1;
+        }
+
+        return result;
+    }
+
+    static void set(long[] bits, int index) {
+        bits[index >>> 6] |= 1L << index;
+    }
+
+    static void clear(long[] bits, int index) {
+        bits[index >>> 6] &= ~(1L << index);
+    }
+
+    static boolean get(long[] bits, int index) {
+        return (bits[index >>> 6] & (1L << index)) != 0L;
+    }
+
+    static void or(long[] target, long[] other) {
+        for (int i = 0; i < target.length; i++) {
+            target[i] |= other[i];
+        }
+    }
+
+    static void and(long[] target, long[] other) {
+        for (int i = 0; i < target.length; i++) {
+            target[i] &= other[i];
+        }
+    }
+
+    private static int[] concat(int[] a, int[] b) {
+        var result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    static int cardinality(long[] bits) {
+        int count = 0;
+
+        for (var word : bits) {
+            count += Long.bitCount(word);
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.servicedirectory.core;
+
+import java.time.Instant;
+
+/**
+ * The availability checking status of a registered service, as shown to
+ * operators.
+ *
+ * @author keim
+ */
+public class ServiceStatus {
+
+    private final String serviceId;
+    private final boolean active;
+    private final Instant lastUpdate;
+    private final boolean checking;
+    private final long checkIntervalMillis;
+    private final Instant nextCheckAt;
+    private final CircuitBreaker.State circuitBreakerState;
+    private final int consecutiveFailures;
+    private final Instant openUntil;
+    private final int consecutiveSuccesses;
+    private final LatencyStats.Summary latency;
+
+    private ServiceStatus(ServiceEntry entry) {
+        var state = entry.getState();
+        var breaker = entry.getCircuitBreaker().snapshot();
+
+        this.circuitBreakerState = breaker.getState();
+        this.consecutiveFailures = breaker.getConsecutiveFailures();
+        this.openUntil = toInstant(breaker.getOpenUntil());
+
+        this.consecutiveSuccesses = entry.getFlapDamper().getConsecutiveSuccesses();
+        this.latency = entry.getLatency().getSummary();
+        this.serviceId = entry.getId();
+        this.active = state.isActive();
+        this.lastUpdate = state.getLastUpdate();
+        this.checking = entry.isProbing();
+        this.checkIntervalMillis = entry.getCheckInterval();
+        this.nextCheckAt = toInstant(CheckSchedule.getDueAt(entry));
+    }
+
+    public static ServiceStatus of(ServiceEntry entry) {
+        return new ServiceStatus(entry);
+    }
+
+    private static Instant toInstant(long epochMillis) {
+        return epochMillis <= 0 ? null : Instant.ofEpochMilli(epochMillis);
+    }
+
+    public String getServiceId() {
+        return serviceId;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * @return The point in time when the "active" flag was last confirmed.
+     */
+    public Instant getLastUpdate() {
+        return lastUpdate;
+    }
+
+    /**
+     * @return Whether an availability check is in flight right now.
+     */
+    public boolean isChecking() {
+        return checking;
+    }
+
+    /**
+     * @return The current interval between the checks of this service or 0
+     * if it was not checked yet.
+     */
+    public long getCheckIntervalMillis() {
+        return checkIntervalMillis;
+    }
+
+    /**
+     * @return The point in time of the next check or null if none is
+     * scheduled, e.g. because a check is in flight.
+     */
+    public Instant getNextCheckAt() {
+        return nextCheckAt;
+    }
+
+    public CircuitBreaker.State getCircuitBreakerState() {
+        return circuitBreakerState;
+    }
+
+    /**
+     * @return The number of consecutive successful checks.
+     */
+    public int getConsecutiveSuccesses() {
+        return consecutiveSuccesses;
+    }
+
+    /**
+     * @return The number of consecutive failed checks.
+     */
+    public int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * @return The point in time until which checks are skipped, because the
+     * circuit breaker is open.
+     */
+    public Instant getOpenUntil() {
+        return openUntil;
+    }
+
+    /**
+     * @return The round-trip times of the availability checks.
+     */
+    public LatencyStats.Summary getLatency() {
+        return latency;
+    }
+}
@@ -30,6 +30,7 @@ import static org.junit.Assert.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import java.util.List;
@@ -52,6 +53,7 @@ import de.hsesslingen.keim.efs.mobility.service.MobilityService;
 import de.hsesslingen.keim.efs.mobility.service.MobilityService.API;
 import de.hsesslingen.keim.efs.mobility.service.Mode;
 import de.hsesslingen.keim.efs.servicedirectory.ServiceDirectoryPluginTestApplication;
+import de.hsesslingen.keim.efs.servicedirectory.core.MobilityServiceFinder;
 import java.util.EnumSet;
 import java.util.Set;
 import org.junit.Before;
@@ -68,6 +70,9 @@ public class SearchApiTest extends BaseClassApiTest {
     @Autowired
     private MockMvc mockMvc;
 
+    @Autowired
+    private MobilityServiceFinder finder;
+
     private static final String SEARCH_URI = "/api/search";
 
     private static final MobilityService[] SERVICES = new MobilityService[]{
@@ -223,4 +228,45 @@ public class SearchApiTest extends BaseClassApiTest {
         assertTrue(resultServices.contains(getServiceFromRegistry("legendary-service-1")));
     }
 
+
+    @Test
+    public void searchTest_NotModified() throws Exception {
+        MvcResult result = mockMvc.perform(get(SEARCH_URI).param("modes", "CAR"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andReturn();
+
+        String etag = result.getResponse().getHeader("ETag");
+
+        mockMvc.perform(get(SEARCH_URI).param("modes", "CAR").header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        // The same registry version with a different query is a different result.
+        mockMvc.perform(get(SEARCH_URI).param("modes", "BICYCLE").header("If-None-Match", etag))
+                .andExpect(status().isOk());
+
+        registry.setActive("legendary-service-1", false);
+
+        mockMvc.perform(get(SEARCH_URI).param("modes", "CAR").header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andExpect(content().string("[]"));
+    }
+
+    @Test
+    public void searchTest_NotModifiedCountsDemand() throws Exception {
+        var demand = registry.getEntryById("legendary-service-1").getDemand();
+        finder.spreadDemand();
+        var before = demand.getScore(0, Long.MAX_VALUE);
+
+        MvcResult result = mockMvc.perform(get(SEARCH_URI).param("modes", "CAR"))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        mockMvc.perform(get(SEARCH_URI).param("modes", "CAR").header("If-None-Match", result.getResponse().getHeader("ETag")))
+                .andExpect(status().isNotModified());
+
+        finder.spreadDemand();
+        assertEquals(before + 2, demand.getScore(0, Long.MAX_VALUE), 0);
+    }
 }
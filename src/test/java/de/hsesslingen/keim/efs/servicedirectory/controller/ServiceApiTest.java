@@ -33,6 +33,7 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import java.util.List;
@@ -133,6 +134,17 @@ public class ServiceApiTest extends BaseClassApiTest {
         assertEquals(getServiceFromRegistry(SERVICE_ID1), service);
     }
 
+    @Test
+    public void getServiceByIdIgnoreCaseTest() throws Exception {
+        MvcResult result = mockMvc.perform(get(SERVICE_WITH_ID_URI, "Legendary-SERVICE-1"))
+                .andExpect(status().is2xxSuccessful())
+                .andDo(print())
+                .andReturn();
+
+        MobilityService service = mapper.readValue(result.getResponse().getContentAsByteArray(), MobilityService.class);
+        assertEquals(getServiceFromRegistry(SERVICE_ID1), service);
+    }
+
     @Test
     public void getServiceByIdTest_404() throws Exception {
         MvcResult result = mockMvc.perform(get(SERVICE_WITH_ID_URI, "unknown_service_id"))
@@ -145,6 +157,14 @@ public class ServiceApiTest extends BaseClassApiTest {
         assertEquals("404", error.getCode());
     }
 
+    @Test
+    public void getChangesTest_400() throws Exception {
+        mockMvc.perform(get(SERVICE_URI + "/changes").param("since", "-3"))
+                .andExpect(status().isBadRequest())
+                .andDo(print())
+                .andReturn();
+    }
+
     @Test
     public void registerNewServiceTest() throws Exception {
         MvcResult result = mockMvc.perform(post(SERVICE_URI)
@@ -188,4 +208,54 @@ public class ServiceApiTest extends BaseClassApiTest {
         assertNotNull(service);
         assertEquals(getServiceFromRegistry(SERVICE_ID1), service);
     }
+
+    @Test
+    public void getAllServicesTest_NotModified() throws Exception {
+        MvcResult result = mockMvc.perform(get(SERVICE_URI))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andReturn();
+
+        String etag = result.getResponse().getHeader("ETag");
+
+        mockMvc.perform(get(SERVICE_URI).header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        registry.delete(SERVICE_ID1);
+
+        mockMvc.perform(get(SERVICE_URI).header("If-None-Match", etag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void getChangesTest() throws Exception {
+        long sequence = registry.getSequence();
+
+        registry.delete(SERVICE_ID1);
+
+        mockMvc.perform(get(SERVICE_URI + "/changes").param("since", String.valueOf(sequence)))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("\"resyncRequired\":false")))
+                .andExpect(content().string(containsString("\"type\":\"DELETED\"")))
+                .andExpect(content().string(containsString(SERVICE_ID1)))
+                .andDo(print());
+    }
+
+    @Test
+    public void getServiceStatusTest() throws Exception {
+        mockMvc.perform(get(SERVICE_WITH_ID_URI + "/status", SERVICE_ID1))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("\"serviceId\":\"" + SERVICE_ID1 + "\"")))
+                .andExpect(content().string(containsString("\"circuitBreakerState\":\"CLOSED\"")))
+                .andDo(print());
+
+        // Like the service itself, its status is found ignoring the case of the id.
+        mockMvc.perform(get(SERVICE_WITH_ID_URI + "/status", "Legendary-SERVICE-1"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("\"serviceId\":\"" + SERVICE_ID1 + "\"")));
+
+        mockMvc.perform(get(SERVICE_WITH_ID_URI + "/status", "unknown_service_id"))
+                .andExpect(status().isNotFound());
+    }
 }
@@ -0,0 +1,367 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.servicedirectory.core;
+
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+import de.hsesslingen.keim.efs.mobility.requests.DefaultRequestTemplate;
+import de.hsesslingen.keim.efs.mobility.requests.MiddlewareRequestTemplate;
+import de.hsesslingen.keim.efs.mobility.service.MobilityService;
+import de.hsesslingen.keim.efs.mobility.service.MobilityService.API;
+import de.hsesslingen.keim.efs.mobility.service.Mode;
+import de.hsesslingen.keim.efs.servicedirectory.ServiceDirectoryPluginTestApplication;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.springframework.test.web.client.ExpectedCount.once;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withServerError;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+/**
+ * Drives the checking cycles of the {@link AvailabilityChecker} by hand
+ * against a mocked service info endpoint. States expire quickly and a single
+ * check flips them, so that each test only needs a few checks.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = {ServiceDirectoryPluginTestApplication.class, AvailabilityCheckerTest.MockedRequests.class}, properties = {
+    "service-directory.availability-checker.checking-rate=3600000",
+    "service-directory.availability-checker.state-valid-duration=PT0.2S",
+    "service-directory.availability-checker.check-interval-jitter=0",
+    "service-directory.availability-checker.flap-damping.failures-to-deactivate=1",
+    "service-directory.availability-checker.flap-damping.successes-to-activate=1"
+})
+@ActiveProfiles("test")
+public class AvailabilityCheckerTest {
+
+    private static final String SERVICE_ID = "checked-service";
+    private static final String SERVICE_INFO_URL = "http://checked-service/service-info";
+
+    private static final RestTemplate restTemplate = new RestTemplate();
+
+    @TestConfiguration
+    static class MockedRequests {
+
+        @Bean
+        @Primary
+        public MiddlewareRequestTemplate mockedRequestTemplate() {
+            return new DefaultRequestTemplate(restTemplate);
+        }
+    }
+
+    @Autowired
+    private MobilityServiceRegistry registry;
+
+    @Autowired
+    private AvailabilityChecker checker;
+
+    @Autowired
+    private ObjectMapper mapper;
+
+    private MockRestServiceServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+
+    @Before
+    public void prepare() {
+        registry.deleteAll();
+        server = MockRestServiceServer.bindTo(restTemplate).build();
+    }
+
+    @After
+    public void cleanUp() {
+        registry.deleteAll();
+    }
+
+    @Test(timeout = 10000)
+    public void failedChecksAreRescheduledTest() throws Exception {
+        server.expect(once(), requestTo(SERVICE_INFO_URL))
+                .andExpect(request -> requests.incrementAndGet())
+                .andRespond(request -> {
+                    throw new IOException("Connection refused");
+                });
+        server.expect(once(), requestTo(SERVICE_INFO_URL))
+                .andExpect(request -> requests.incrementAndGet())
+                .andRespond(withServerError());
+
+        registry.register(createService("Checked Service"));
+        var entry = registry.getEntryById(SERVICE_ID);
+
+        // A probe that fails with an exception still releases and reschedules the service.
+        checkUntil(entry, 1);
+        assertFalse(registry.isActive(SERVICE_ID));
+
+        checkUntil(entry, 2);
+        assertFalse(registry.isActive(SERVICE_ID));
+        assertEquals(2, entry.getCircuitBreaker().getConsecutiveFailures());
+        assertEquals(0, checker.getStatistics().getInFlight());
+
+        server.verify();
+    }
+
+    @Test
+    public void deletedServicesAreUnscheduledTest() {
+        registry.register(createService("Checked Service"));
+        var entry = registry.getEntryById(SERVICE_ID);
+        assertTrue(CheckSchedule.getDueAt(entry) >= 0);
+
+        registry.delete(SERVICE_ID);
+        assertEquals(-1, CheckSchedule.getDueAt(entry));
+    }
+
+    @Test(timeout = 10000)
+    public void oneProbeInFlightPerServiceTest() throws Exception {
+        var release = new CountDownLatch(1);
+        var service = createService("Checked Service");
+
+        server.expect(once(), requestTo(SERVICE_INFO_URL))
+                .andExpect(request -> requests.incrementAndGet())
+                .andRespond(request -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException ex) {
+                        throw new IOException(ex);
+                    }
+                    return withSuccess(mapper.writeValueAsString(service), MediaType.APPLICATION_JSON).createResponse(request);
+                });
+
+        registry.register(service);
+        var entry = registry.getEntryById(SERVICE_ID);
+
+        while (requests.get() < 1) {
+            checker.checkAlmostDueMobilityServices();
+            Thread.sleep(10);
+        }
+
+        // Neither changes of the state nor later cycles start a second probe while the first hangs.
+        registry.setActive(SERVICE_ID, false);
+        registry.setActive(SERVICE_ID, true);
+
+        for (int i = 0; i < 5; i++) {
+            Thread.sleep(100);
+            checker.checkAlmostDueMobilityServices();
+        }
+
+        assertTrue(entry.isProbing());
+        assertEquals(1, requests.get());
+        assertEquals(1, checker.getStatistics().getInFlight());
+
+        release.countDown();
+        checkUntil(entry, 1);
+
+        assertTrue(registry.isActive(SERVICE_ID));
+        server.verify();
+    }
+
+    @Test(timeout = 10000)
+    public void onlyAnsweredChecksRecordLatencyTest() throws Exception {
+        var service = createService("Checked Service");
+
+        server.expect(once(), requestTo(SERVICE_INFO_URL))
+                .andExpect(request -> requests.incrementAndGet())
+                .andRespond(request -> {
+                    throw new IOException("Connection refused");
+                });
+        server.expect(once(), requestTo(SERVICE_INFO_URL))
+                .andExpect(request -> requests.incrementAndGet())
+                .andRespond(withServerError());
+        server.expect(once(), requestTo(SERVICE_INFO_URL))
+                .andExpect(request -> requests.incrementAndGet())
+                .andRespond(withSuccess(mapper.writeValueAsString(service), MediaType.APPLICATION_JSON));
+
+        registry.register(service);
+        var entry = registry.getEntryById(SERVICE_ID);
+
+        // A refused connection is no round trip, it would only make the service look fast.
+        checkUntil(entry, 1);
+        assertFalse(entry.getLatency().hasSamples());
+
+        checkUntil(entry, 2);
+        assertEquals(1, entry.getLatency().getSummary().getCount());
+
+        checkUntil(entry, 3);
+        assertEquals(2, entry.getLatency().getSummary().getCount());
+
+        server.verify();
+    }
+
+    @Test(timeout = 10000)
+    public void conditionalChecksSendValidatorsTest() throws Exception {
+        var service = createService("Checked Service");
+        var validators = new HttpHeaders();
+        validators.set(HttpHeaders.ETAG, "\"v1\"");
+        validators.set(HttpHeaders.LAST_MODIFIED, "Wed, 21 Oct 2015 07:28:00 GMT");
+
+        server.expect(once(), requestTo(SERVICE_INFO_URL))
+                .andExpect(request -> requests.incrementAndGet())
+                .andExpect(request -> assertNull(request.getHeaders().getFirst(HttpHeaders.IF_NONE_MATCH)))
+                .andRespond(withSuccess(mapper.writeValueAsString(service), MediaType.APPLICATION_JSON).headers(validators));
+        server.expect(once(), requestTo(SERVICE_INFO_URL))
+                .andExpect(request -> requests.incrementAndGet())
+                .andExpect(header(HttpHeaders.IF_NONE_MATCH, "\"v1\""))
+                .andExpect(header(HttpHeaders.IF_MODIFIED_SINCE, "Wed, 21 Oct 2015 07:28:00 GMT"))
+                .andRespond(withStatus(HttpStatus.NOT_MODIFIED));
+
+        registry.register(service);
+        var entry = registry.getEntryById(SERVICE_ID);
+
+        checkUntil(entry, 1);
+        assertEquals("\"v1\"", entry.getProbeValidators().getETag());
+
+        // A "304 Not Modified" without any body counts as available and keeps the validators.
+        registry.setActive(SERVICE_ID, false);
+        checkUntil(entry, 2);
+
+        assertTrue(registry.isActive(SERVICE_ID));
+        assertEquals("\"v1\"", entry.getProbeValidators().getETag());
+        assertEquals(service, registry.getById(SERVICE_ID));
+
+        server.verify();
+    }
+
+    @Test(timeout = 10000)
+    public void statusOnlyChecksSkipTheBodyTest() throws Exception {
+        var validators = new HttpHeaders();
+        validators.set(HttpHeaders.ETAG, "\"v1\"");
+
+        server.expect(once(), requestTo(SERVICE_INFO_URL))
+                .andExpect(request -> requests.incrementAndGet())
+                .andRespond(withSuccess("This is no service info.", MediaType.TEXT_PLAIN).headers(validators));
+
+        ReflectionTestUtils.setField(checker, "probeMode", AvailabilityChecker.ProbeMode.STATUS_ONLY);
+
+        try {
+            var service = createService("Checked Service");
+            registry.register(service);
+            registry.setActive(SERVICE_ID, false);
+
+            var entry = registry.getEntryById(SERVICE_ID);
+            checkUntil(entry, 1);
+
+            // The body is neither parsed nor used to refresh the service.
+            assertTrue(registry.isActive(SERVICE_ID));
+            assertNull(entry.getProbeValidators());
+            assertSame(service, registry.getById(SERVICE_ID));
+        } finally {
+            ReflectionTestUtils.setField(checker, "probeMode", AvailabilityChecker.ProbeMode.CONDITIONAL);
+        }
+
+        server.verify();
+    }
+
+    @Test(timeout = 10000)
+    public void changedServiceInfoRefreshesTheServiceTest() throws Exception {
+        var validators = new HttpHeaders();
+        validators.set(HttpHeaders.ETAG, "\"v2\"");
+
+        server.expect(once(), requestTo(SERVICE_INFO_URL))
+                .andExpect(request -> requests.incrementAndGet())
+                .andRespond(withSuccess(mapper.writeValueAsString(createService("Renamed Service")), MediaType.APPLICATION_JSON).headers(validators));
+
+        registry.register(createService("Checked Service"));
+        var entry = registry.getEntryById(SERVICE_ID);
+        var version = registry.getVersion();
+
+        checkUntil(entry, 1);
+
+        assertEquals("Renamed Service", registry.getById(SERVICE_ID).getName());
+        assertTrue(registry.getVersion() > version);
+
+        // Refreshing drops the validators of the old service info, but the new ones are remembered.
+        assertEquals("\"v2\"", entry.getProbeValidators().getETag());
+
+        server.verify();
+    }
+
+    @Test
+    public void invalidServiceInfoIsIgnoredTest() throws Exception {
+        server.expect(once(), requestTo(SERVICE_INFO_URL))
+                .andExpect(request -> requests.incrementAndGet())
+                .andRespond(withSuccess(mapper.writeValueAsString(createService(null)), MediaType.APPLICATION_JSON));
+
+        registry.register(createService("Checked Service"));
+        var entry = registry.getEntryById(SERVICE_ID);
+        var version = registry.getVersion();
+
+        checkUntil(entry, 1);
+
+        // The service info misses its name, so it could not have been registered.
+        assertEquals("Checked Service", registry.getById(SERVICE_ID).getName());
+        assertEquals(version, registry.getVersion());
+
+        server.verify();
+    }
+
+    /**
+     * Runs checking cycles until the given number of checks were sent and the
+     * last one completed, i.e. the service is no longer being checked and has
+     * been rescheduled.
+     */
+    private void checkUntil(ServiceEntry entry, int checks) throws InterruptedException {
+        while (requests.get() < checks || entry.isProbing() || CheckSchedule.getDueAt(entry) < 0) {
+            checker.checkAlmostDueMobilityServices();
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+
+    private static MobilityService createService(String name) {
+        return new MobilityService(
+                SERVICE_ID,
+                "Checked Services GmbH",
+                null,
+                name,
+                "http://checked-service",
+                "Entire Spacetime-continuum",
+                Set.of(Mode.CAR),
+                EnumSet.allOf(API.class),
+                null
+        );
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.servicedirectory.core;
+
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import de.hsesslingen.keim.efs.mobility.service.MobilityService;
+import de.hsesslingen.keim.efs.mobility.service.MobilityService.API;
+import de.hsesslingen.keim.efs.mobility.service.Mode;
+import de.hsesslingen.keim.efs.servicedirectory.ServiceDirectoryPluginTestApplication;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = {ServiceDirectoryPluginTestApplication.class})
+@ActiveProfiles("test")
+public class ChangeBroadcasterTest {
+
+    @Autowired
+    private MobilityServiceRegistry registry;
+
+    @Autowired
+    private ChangeBroadcaster broadcaster;
+
+    @Before
+    public void prepare() {
+        registry.deleteAll();
+    }
+
+    @Test(timeout = 10000)
+    public void filteredChangesAreDeliveredInOrderTest() throws Exception {
+        var received = new LinkedBlockingQueue<ServiceChange>();
+
+        var subscription = broadcaster.subscribe(new SearchQuery(Set.of(Mode.BUS), Set.of(), false, Set.of()), new ChangeBroadcaster.Sink() {
+            @Override
+            public void send(ServiceChange change) {
+                received.add(change);
+            }
+
+            @Override
+            public void resync(long epoch, long sequence) {
+            }
+        });
+
+        try {
+            registry.register(createService("watched-service", Mode.BUS));
+            registry.register(createService("ignored-service", Mode.CAR));
+            registry.setActive("watched-service", false);
+            registry.delete("watched-service");
+
+            var types = List.of(
+                    received.poll(5, TimeUnit.SECONDS),
+                    received.poll(5, TimeUnit.SECONDS),
+                    received.poll(5, TimeUnit.SECONDS)
+            ).stream().map(ServiceChange::getType).collect(toList());
+
+            assertEquals(List.of(ServiceChange.Type.REGISTERED, ServiceChange.Type.DEACTIVATED, ServiceChange.Type.DELETED), types);
+            assertTrue(received.isEmpty());
+        } finally {
+            subscription.cancel();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void slowSubscriberIsToldToResyncTest() throws Exception {
+        var blocked = new CountDownLatch(1);
+        var resynced = new CountDownLatch(1);
+        var resyncsBefore = broadcaster.getStatistics().getResyncs();
+
+        var subscription = broadcaster.subscribe(new SearchQuery(Set.of(), Set.of(), false, Set.of()), new ChangeBroadcaster.Sink() {
+            @Override
+            public void send(ServiceChange change) throws IOException {
+                try {
+                    blocked.await();
+                } catch (InterruptedException ex) {
+                    throw new IOException(ex);
+                }
+            }
+
+            @Override
+            public void resync(long epoch, long sequence) {
+                assertEquals(registry.getEpoch(), epoch);
+                assertEquals(registry.getSequence(), sequence);
+                resynced.countDown();
+            }
+        });
+
+        try {
+            // Overflows the buffer of the subscriber, which hangs in its first send().
+            for (int i = 0; i < 1000; i++) {
+                registry.register(createService("flooding-service-" + i, Mode.CAR));
+            }
+
+            blocked.countDown();
+
+            assertTrue(resynced.await(5, TimeUnit.SECONDS));
+            assertTrue(broadcaster.getStatistics().getResyncs() > resyncsBefore);
+        } finally {
+            subscription.cancel();
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void stuckSubscribersAreCancelledTest() throws Exception {
+        var timeoutsBefore = broadcaster.getStatistics().getTimeouts();
+        var stuck = new CountDownLatch(1);
+        var closed = new CountDownLatch(3);
+        var received = new LinkedBlockingQueue<ServiceChange>();
+        var subscriptions = new ArrayList<ChangeBroadcaster.Subscription>();
+
+        try {
+            // Stuck subscribers, e.g. sockets with full TCP windows.
+            for (int i = 0; i < 3; i++) {
+                subscriptions.add(broadcaster.subscribe(new SearchQuery(Set.of(), Set.of(), false, Set.of()), new ChangeBroadcaster.Sink() {
+                    @Override
+                    public void send(ServiceChange change) throws IOException {
+                        try {
+                            stuck.await();
+                        } catch (InterruptedException ex) {
+                            throw new IOException(ex);
+                        }
+                    }
+
+                    @Override
+                    public void resync(long epoch, long sequence) {
+                    }
+
+                    @Override
+                    public void close() {
+                        closed.countDown();
+                    }
+                }));
+            }
+
+            subscriptions.add(broadcaster.subscribe(new SearchQuery(Set.of(), Set.of(), false, Set.of()), new ChangeBroadcaster.Sink() {
+                @Override
+                public void send(ServiceChange change) {
+                    received.add(change);
+                }
+
+                @Override
+                public void resync(long epoch, long sequence) {
+                }
+            }));
+
+            registry.register(createService("watched-service", Mode.BUS));
+
+            var change = received.poll(15, TimeUnit.SECONDS);
+            assertEquals(ServiceChange.Type.REGISTERED, change.getType());
+
+            assertTrue(closed.await(15, TimeUnit.SECONDS));
+            assertEquals(timeoutsBefore + 3, broadcaster.getStatistics().getTimeouts());
+        } finally {
+            stuck.countDown();
+            subscriptions.forEach(ChangeBroadcaster.Subscription::cancel);
+        }
+    }
+
+    @Test
+    public void subscribersAreCappedTest() {
+        var subscriptions = new ArrayList<ChangeBroadcaster.Subscription>();
+        var sink = new ChangeBroadcaster.Sink() {
+            @Override
+            public void send(ServiceChange change) {
+            }
+
+            @Override
+            public void resync(long epoch, long sequence) {
+            }
+        };
+
+        try {
+            ChangeBroadcaster.Subscription subscription;
+
+            while ((subscription = broadcaster.subscribe(new SearchQuery(Set.of(), Set.of(), false, Set.of()), sink)) != null) {
+                subscriptions.add(subscription);
+            }
+
+            assertEquals(subscriptions.size(), broadcaster.getStatistics().getSubscribers());
+
+            // Cancelling frees the place.
+            subscriptions.remove(0).cancel();
+            subscription = broadcaster.subscribe(new SearchQuery(Set.of(), Set.of(), false, Set.of()), sink);
+            assertNotNull(subscription);
+            subscriptions.add(subscription);
+        } finally {
+            subscriptions.forEach(ChangeBroadcaster.Subscription::cancel);
+        }
+
+        assertEquals(0, broadcaster.getStatistics().getSubscribers());
+    }
+
+    private static MobilityService createService(String id, Mode mode) {
+        return new MobilityService(
+                id,
+                "Watched Services GmbH",
+                null,
+                id,
+                "http://" + id + "/",
+                "Entire Spacetime-continuum",
+                Set.of(mode),
+                EnumSet.allOf(API.class),
+                null
+        );
+    }
+}
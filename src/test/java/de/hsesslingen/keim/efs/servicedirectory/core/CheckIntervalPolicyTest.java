@@ -0,0 +1,113 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.servicedirectory.core;
+
+import de.hsesslingen.keim.efs.mobility.service.MobilityService;
+import de.hsesslingen.keim.efs.mobility.service.MobilityService.API;
+import de.hsesslingen.keim.efs.mobility.service.Mode;
+import java.util.EnumSet;
+import java.util.Set;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class CheckIntervalPolicyTest {
+
+    private static ServiceEntry entry() {
+        return new ServiceEntry(new MobilityService(
+                "checked-service",
+                "Checked Services GmbH",
+                null,
+                "checked-service",
+                "http://checked-service/",
+                "Entire Spacetime-continuum",
+                Set.of(Mode.CAR),
+                EnumSet.allOf(API.class),
+                null
+        ));
+    }
+
+    @Test
+    public void stableServicesBackOffTest() {
+        var policy = new CheckIntervalPolicy(1000, 4000, 10000, 2, 0);
+        var entry = entry();
+
+        policy.checked(entry, false);
+        assertEquals(8000, entry.getCheckInterval());
+        policy.checked(entry, false);
+        assertEquals(10000, entry.getCheckInterval());
+        assertEquals(10000, policy.nextDelay(entry));
+
+        // A change of the state starts over with the minimum interval.
+        entry.getState().markInactive();
+        policy.checked(entry, true);
+        assertEquals(1000, entry.getCheckInterval());
+
+        // Unavailable services back off only up to the base interval.
+        for (int i = 0; i < 5; i++) {
+            policy.checked(entry, false);
+        }
+        assertEquals(4000, entry.getCheckInterval());
+    }
+
+    @Test
+    public void delaysAreJitteredTest() {
+        var policy = new CheckIntervalPolicy(1000, 4000, 10000, 2, 0.5);
+        var entry = entry();
+
+        for (int i = 0; i < 1000; i++) {
+            var initial = policy.nextDelay(entry);
+            assertTrue(initial >= 1000 && initial <= 4000);
+        }
+
+        entry.setCheckInterval(4000);
+
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+
+        for (int i = 0; i < 1000; i++) {
+            var delay = policy.nextDelay(entry);
+            assertTrue(delay >= 2000 && delay <= 6000);
+            min = Math.min(min, delay);
+            max = Math.max(max, delay);
+        }
+
+        assertTrue(max - min > 1000);
+    }
+
+    @Test
+    public void demandTest() {
+        var policy = new CheckIntervalPolicy(1000, 4000, 10000, 2, 0, 50, 2);
+        var entry = entry();
+
+        entry.setCheckInterval(8000);
+        assertEquals(4000, policy.nextDelay(entry, 50));
+        assertEquals(8000, policy.nextDelay(entry, 10));
+        assertEquals(10000, policy.nextDelay(entry, 0));
+
+        // Services whose state is being confirmed are not relaxed.
+        entry.setCheckInterval(1000);
+        assertEquals(1000, policy.nextDelay(entry, 0));
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.servicedirectory.core;
+
+import de.hsesslingen.keim.efs.mobility.service.MobilityService;
+import de.hsesslingen.keim.efs.mobility.service.MobilityService.API;
+import de.hsesslingen.keim.efs.mobility.service.Mode;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class CheckScheduleTest {
+
+    private static ServiceEntry entry(String id) {
+        return new ServiceEntry(new MobilityService(
+                id,
+                "Scheduled Services GmbH",
+                null,
+                id,
+                "http://" + id + "/",
+                "Entire Spacetime-continuum",
+                Set.of(Mode.CAR),
+                EnumSet.allOf(API.class),
+                null
+        ));
+    }
+
+    @Test
+    public void dueEntriesArePolledInOrderTest() {
+        var schedule = new CheckSchedule();
+        var a = entry("a");
+        var b = entry("b");
+        var c = entry("c");
+
+        schedule.schedule(c, 300);
+        schedule.schedule(a, 100);
+        schedule.schedule(b, 200);
+
+        assertTrue(schedule.pollDue(99).isEmpty());
+        assertEquals(List.of(a, b), schedule.pollDue(200));
+        assertEquals(-1, CheckSchedule.getDueAt(a));
+        assertEquals(300, CheckSchedule.getDueAt(c));
+        assertEquals(1, schedule.size());
+    }
+
+    @Test
+    public void reschedulingReplacesTheDeadlineTest() {
+        var schedule = new CheckSchedule();
+        var a = entry("a");
+        var b = entry("b");
+
+        schedule.schedule(a, 100);
+        schedule.schedule(b, 100);
+        schedule.schedule(a, 500);
+        schedule.schedule(a, 100);
+        schedule.cancel(b.getId());
+
+        assertEquals(1, schedule.size());
+        assertEquals(List.of(a), schedule.pollDue(1000));
+        assertTrue(schedule.pollDue(1000).isEmpty());
+        assertEquals(0, schedule.size());
+    }
+
+    @Test
+    public void outdatedDeadlinesAreCompactedTest() {
+        var schedule = new CheckSchedule();
+        var a = entry("a");
+
+        for (int i = 0; i < 10000; i++) {
+            schedule.schedule(a, i);
+        }
+
+        assertEquals(1, schedule.size());
+        assertEquals(List.of(a), schedule.pollDue(Long.MAX_VALUE));
+        assertEquals(0, schedule.size());
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.servicedirectory.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void stateTransitionTest() {
+        var breaker = new CircuitBreaker();
+
+        breaker.recordFailure(0, 3, 1000);
+        breaker.recordFailure(0, 3, 1000);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire(0));
+
+        breaker.recordFailure(100, 3, 1000);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(1100, breaker.getOpenUntil());
+        assertFalse(breaker.tryAcquire(1099));
+
+        // Only a single check is let through while half-open.
+        assertTrue(breaker.tryAcquire(1100));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire(1100));
+
+        // A failed half-open check opens the breaker right away.
+        breaker.recordFailure(1200, 3, 1000);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(2200, breaker.getOpenUntil());
+
+        assertTrue(breaker.tryAcquire(2200));
+        breaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getConsecutiveFailures());
+        assertEquals(0, breaker.getOpenUntil());
+    }
+
+    @Test
+    public void snapshotTest() {
+        var breaker = new CircuitBreaker();
+
+        for (int i = 0; i < 3; i++) {
+            breaker.recordFailure(100, 3, 1000);
+        }
+
+        var snapshot = breaker.snapshot();
+        breaker.recordSuccess();
+
+        assertEquals(CircuitBreaker.State.OPEN, snapshot.getState());
+        assertEquals(3, snapshot.getConsecutiveFailures());
+        assertEquals(1100, snapshot.getOpenUntil());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.snapshot().getState());
+    }
+}
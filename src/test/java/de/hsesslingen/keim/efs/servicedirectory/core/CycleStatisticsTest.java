@@ -0,0 +1,53 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.servicedirectory.core;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class CycleStatisticsTest {
+
+    @Test
+    public void recorderTest() {
+        var recorder = new CycleStatistics.Recorder();
+
+        var empty = recorder.toStatistics();
+        assertEquals(0, empty.getCycles());
+        assertEquals(0, empty.getAverageDurationMillis(), 0);
+
+        recorder.finished(30000000, 10, 0);
+        recorder.merged();
+        recorder.finished(10000000, 4, 6);
+
+        var statistics = recorder.toStatistics();
+        assertEquals(2, statistics.getCycles());
+        assertEquals(1, statistics.getMergedRuns());
+        assertEquals(10, statistics.getLastDurationMillis());
+        assertEquals(30, statistics.getMaxDurationMillis());
+        assertEquals(20, statistics.getAverageDurationMillis(), 0.001);
+        assertEquals(4, statistics.getLastStarted());
+        assertEquals(6, statistics.getLastCarriedOver());
+        assertEquals(6, statistics.getTotalCarriedOver());
+    }
+}
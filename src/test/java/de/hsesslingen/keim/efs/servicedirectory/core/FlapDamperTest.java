@@ -0,0 +1,70 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.servicedirectory.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class FlapDamperTest {
+
+    @Test
+    public void hysteresisTest() {
+        var policy = new FlapDamper.Policy(2, 3, 1000, 0);
+        var damper = new FlapDamper();
+
+        assertTrue(damper.decide(false, true, 0, policy));
+        assertTrue(damper.decide(true, true, 0, policy));
+
+        // The failures must be consecutive.
+        assertTrue(damper.decide(false, true, 0, policy));
+        assertFalse(damper.decide(false, true, 0, policy));
+
+        assertFalse(damper.decide(true, false, 0, policy));
+        assertFalse(damper.decide(true, false, 0, policy));
+        assertTrue(damper.decide(true, false, 0, policy));
+        assertEquals(3, damper.getConsecutiveSuccesses());
+
+        // Without a suppress threshold there is no penalty.
+        assertEquals(0, damper.getPenalty(0, policy), 0);
+    }
+
+    @Test
+    public void flapPenaltyTest() {
+        var policy = new FlapDamper.Policy(1, 1, 1000, 2);
+        var damper = new FlapDamper();
+
+        assertFalse(damper.decide(false, true, 0, policy));
+        assertTrue(damper.decide(true, false, 0, policy));
+        assertFalse(damper.decide(false, true, 0, policy));
+        assertEquals(3, damper.getPenalty(0, policy), 0.001);
+
+        // Suppressed until the penalty decayed below the threshold.
+        assertFalse(damper.decide(true, false, 0, policy));
+        assertFalse(damper.decide(true, false, 500, policy));
+        assertTrue(damper.decide(true, false, 1000, policy));
+        assertEquals(2.5, damper.getPenalty(1000, policy), 0.001);
+    }
+}
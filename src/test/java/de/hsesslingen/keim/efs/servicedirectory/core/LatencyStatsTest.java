@@ -0,0 +1,71 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.servicedirectory.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class LatencyStatsTest {
+
+    @Test
+    public void emptyTest() {
+        var stats = new LatencyStats();
+
+        assertFalse(stats.hasSamples());
+        assertTrue(Double.isNaN(stats.getEwmaMillis()));
+
+        var summary = stats.getSummary();
+        assertEquals(0, summary.getCount());
+        assertNull(summary.getEwmaMillis());
+        assertNull(summary.getP50Millis());
+    }
+
+    @Test
+    public void histogramAndEwmaTest() {
+        var stats = new LatencyStats();
+
+        stats.record(100, 0.5);
+        assertEquals(100, stats.getEwmaMillis(), 0);
+
+        stats.record(200, 0.5);
+        assertEquals(150, stats.getEwmaMillis(), 0.001);
+
+        for (int i = 0; i < 97; i++) {
+            stats.record(15, 0.5);
+        }
+        stats.record(45000, 0.5);
+
+        var summary = stats.getSummary();
+        assertEquals(100, summary.getCount());
+        assertEquals(45000, summary.getMaxMillis());
+        assertEquals(Long.valueOf(20), summary.getP50Millis());
+        assertEquals(Long.valueOf(20), summary.getP90Millis());
+        assertEquals(Long.valueOf(200), summary.getP99Millis());
+        assertEquals(summary.getBucketBoundsMillis().length + 1, summary.getBucketCounts().length);
+        assertEquals(1, summary.getBucketCounts()[summary.getBucketCounts().length - 1]);
+    }
+}
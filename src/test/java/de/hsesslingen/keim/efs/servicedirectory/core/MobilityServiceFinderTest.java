@@ -39,7 +39,11 @@ import de.hsesslingen.keim.efs.mobility.service.MobilityService;
 import de.hsesslingen.keim.efs.mobility.service.MobilityService.API;
 import de.hsesslingen.keim.efs.mobility.service.Mode;
 import de.hsesslingen.keim.efs.servicedirectory.ServiceDirectoryPluginTestApplication;
+import java.util.ArrayList;
 import java.util.EnumSet;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import org.junit.Before;
 
@@ -120,4 +124,164 @@ public class MobilityServiceFinderTest {
 
         assertEquals(0, finder.searchByModes(Set.of(Mode.CABLE_TRAM)).size());
     }
+
+    @Test
+    public void searchByApisTest() {
+        registry.register(new MobilityService(
+                "legendary-service-3",
+                "Legendary Services GmbH",
+                null,
+                "Legendary Service 3",
+                "http://legendary-service-3/",
+                "Entire Spacetime-continuum",
+                Set.of(Mode.CAR),
+                EnumSet.noneOf(API.class),
+                null
+        ));
+
+        var allApis = EnumSet.allOf(API.class);
+        var oneApi = EnumSet.of(API.values()[0]);
+
+        assertEquals(3, finder.search(null, null, false, null).size());
+        assertEquals(2, finder.search(null, allApis, false, null).size());
+        assertEquals(2, finder.search(null, oneApi, false, null).size());
+        assertEquals(1, finder.search(Set.of(Mode.CAR), oneApi, false, null).size());
+        assertEquals(2, finder.search(Set.of(Mode.CAR), null, true, null).size());
+
+        registry.setActive("legendary-service-3", false);
+        assertEquals(1, finder.search(Set.of(Mode.CAR), null, true, null).size());
+        assertEquals(2, finder.search(Set.of(Mode.CAR), null, false, null).size());
+
+        registry.setActive("legendary-service-3", true);
+        assertEquals(2, finder.search(Set.of(Mode.CAR), null, true, null).size());
+
+        registry.delete("legendary-service-1");
+        assertEquals(1, finder.search(Set.of(Mode.CAR), null, true, null).size());
+        assertEquals("legendary-service-3", finder.search(Set.of(Mode.CAR), null, true, null).get(0).getId());
+    }
+
+    @Test
+    public void searchByServiceIdsTest() {
+        assertEquals(1, finder.search(null, null, false, Set.of("LEGENDARY-service-1")).size());
+        assertEquals(2, finder.search(null, null, false, Set.of("legendary-service-1", "Legendary-Service-2", "unknown")).size());
+        assertEquals(1, finder.search(null, null, false, Set.of("legendary-service-1", "LEGENDARY-SERVICE-1")).size());
+        assertEquals(1, finder.search(Set.of(Mode.BICYCLE), null, false, Set.of("legendary-service-1", "legendary-service-2")).size());
+        assertEquals(0, finder.search(null, null, false, Set.of("unknown")).size());
+
+        registry.setActive("legendary-service-2", false);
+        assertEquals(1, finder.search(null, null, true, Set.of("legendary-service-1", "legendary-service-2")).size());
+        assertEquals(2, finder.search(null, null, false, Set.of("legendary-service-1", "legendary-service-2")).size());
+    }
+
+    @Test
+    public void searchResultCacheTest() {
+        var modes = Set.of(Mode.CAR, Mode.BICYCLE);
+
+        var hits = finder.getCacheStatistics().getHits();
+        var first = finder.search(modes, null, true, null);
+
+        // Equal queries in a different shape share the cached result.
+        assertSame(first, finder.search(EnumSet.of(Mode.BICYCLE, Mode.CAR), Set.of(), true, Set.of()));
+        assertEquals(hits + 1, finder.getCacheStatistics().getHits());
+
+        registry.setActive("legendary-service-1", false);
+        var second = finder.search(modes, null, true, null);
+        assertNotSame(first, second);
+        assertEquals(1, second.size());
+
+        registry.delete("legendary-service-2");
+        assertEquals(0, finder.search(modes, null, true, null).size());
+    }
+
+    @Test
+    public void searchByLatencyTest() {
+        var query = new SearchQuery(null, null, false, null);
+
+        // Unchecked services are left out by the filter and sorted last.
+        assertEquals(0, finder.searchByHealth(query, 1000L, false, null).size());
+        assertEquals(2, finder.searchByHealth(query, null, true, null).size());
+
+        registry.getEntryById("legendary-service-1").getLatency().record(300, 1);
+        registry.getEntryById("legendary-service-2").getLatency().record(100, 1);
+
+        assertEquals(List.of("legendary-service-2", "legendary-service-1"), finder.searchByHealth(query, null, true, null).stream()
+                .map(ServiceEntry::getId)
+                .collect(toList()));
+
+        var fast = finder.searchByHealth(query, 200L, false, null);
+        assertEquals(1, fast.size());
+        assertEquals("legendary-service-2", fast.get(0).getId());
+
+        // The filtered results are not cached, the search itself still is.
+        assertSame(finder.search(query), finder.search(query));
+    }
+
+    @Test
+    public void searchCountsDemandTest() {
+        var entry = registry.getEntryById("legendary-service-1");
+        finder.spreadDemand();
+        var before = entry.getDemand().getScore(0, Long.MAX_VALUE);
+
+        finder.search(Set.of(Mode.CAR), null, false, null);
+        finder.search(Set.of(Mode.CAR), null, false, null);
+        finder.search(Set.of(Mode.BICYCLE), null, false, null);
+
+        // Searches only count on their cached result until the demand is spread.
+        assertEquals(before, entry.getDemand().getScore(0, Long.MAX_VALUE), 0);
+
+        finder.spreadDemand();
+        assertEquals(before + 2, entry.getDemand().getScore(0, Long.MAX_VALUE), 0);
+    }
+
+    @Test
+    public void notModifiedSearchesCountOnlyCachedResultsTest() {
+        var entry = registry.getEntryById("legendary-service-1");
+        var query = new SearchQuery(Set.of(Mode.CAR), null, false, null);
+        var version = registry.getSnapshot().getVersion();
+        finder.spreadDemand();
+        var before = entry.getDemand().getScore(0, Long.MAX_VALUE);
+        var cached = finder.getCacheStatistics().getSize();
+
+        // Nothing is computed for a result that is not cached.
+        finder.countNotModified(query, version);
+        finder.spreadDemand();
+        assertEquals(cached, finder.getCacheStatistics().getSize());
+        assertEquals(before, entry.getDemand().getScore(0, Long.MAX_VALUE), 0);
+
+        finder.search(query);
+        finder.countNotModified(query, version);
+        finder.spreadDemand();
+        assertEquals(before + 2, entry.getDemand().getScore(0, Long.MAX_VALUE), 0);
+    }
+
+    @Test
+    public void maxStalenessTest() throws Exception {
+        var revalidated = new ArrayList<String>();
+        finder.setRevalidator(entry -> revalidated.add(entry.getId()));
+
+        try {
+            var query = new SearchQuery(null, null, false, null);
+
+            // Services whose checks are not overdue are answered without revalidation.
+            finder.search(new SearchQuery(Set.of(Mode.CAR), null, false, null));
+            assertTrue(revalidated.isEmpty());
+
+            // A service is stale once its own next check is overdue.
+            new CheckSchedule().schedule(registry.getEntryById("legendary-service-2"), System.currentTimeMillis() - 1);
+
+            finder.search(query);
+            assertEquals(List.of("legendary-service-2"), revalidated);
+
+            // The same result is not scanned again right away.
+            finder.search(query);
+            assertEquals(1, revalidated.size());
+
+            Thread.sleep(20);
+
+            assertEquals(2, finder.searchByHealth(query, null, false, 10000L).size());
+            assertTrue(finder.searchByHealth(query, null, false, 10L).isEmpty());
+        } finally {
+            finder.setRevalidator(null);
+        }
+    }
 }
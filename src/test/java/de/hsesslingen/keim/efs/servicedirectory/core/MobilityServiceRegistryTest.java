@@ -29,14 +29,31 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import de.hsesslingen.keim.efs.mobility.exception.HttpException;
 import de.hsesslingen.keim.efs.mobility.service.MobilityService;
 import de.hsesslingen.keim.efs.mobility.service.MobilityService.API;
 import de.hsesslingen.keim.efs.mobility.service.Mode;
 import de.hsesslingen.keim.efs.servicedirectory.ServiceDirectoryPluginTestApplication;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import static java.util.stream.Collectors.toList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -48,6 +65,9 @@ public class MobilityServiceRegistryTest {
     @Autowired
     private MobilityServiceRegistry registry;
 
+    @Autowired
+    private ObjectMapper mapper;
+
     private static MobilityService[] services = new MobilityService[]{
         new MobilityService(
         "legendary-service-1",
@@ -99,4 +119,304 @@ public class MobilityServiceRegistryTest {
         assertNotNull(actualService);
         assertEquals(services[0], actualService);
     }
+
+    @Test
+    public void getServiceByIdIgnoreCaseTest() {
+        assertEquals(services[0], registry.getByIdIgnoreCase("legendary-service-1"));
+        assertEquals(services[0], registry.getByIdIgnoreCase("Legendary-Service-1"));
+        assertEquals(services[1], registry.getByIdIgnoreCase("LEGENDARY-SERVICE-2"));
+    }
+
+    @Test
+    public void updateOfUnknownServiceTest() {
+        var service = createService("legendary-service-1", Mode.BUS);
+
+        try {
+            registry.update("unknown-service", service);
+            fail("Updating an unknown service must fail.");
+        } catch (HttpException e) {
+            // The caller's service stays untouched if there is nothing to update.
+            assertEquals("legendary-service-1", service.getId());
+        }
+    }
+
+    @Test
+    public void cachedJsonTest() throws Exception {
+        var entry = registry.getEntryById("legendary-service-1");
+        var json = entry.getJson(mapper);
+
+        assertSame(json, entry.getJson(mapper));
+
+        registry.update("legendary-service-1", createService("legendary-service-1", Mode.BUS));
+        var updated = entry.getJson(mapper);
+
+        assertNotSame(json, updated);
+        assertEquals(Set.of(Mode.BUS), mapper.readValue(new String(updated, StandardCharsets.UTF_8), MobilityService.class).getModes());
+    }
+
+    @Test
+    public void entriesJsonIsResolvedOnceTest() throws Exception {
+        var body = ServiceEntries.of(registry.getSnapshot().getEntries());
+        var json = body.getJson(mapper);
+
+        registry.update("legendary-service-1", createService("legendary-service-1", Mode.BUS));
+
+        // The body keeps writing the JSON it measured, even after the update.
+        assertSame(json, body.getJson(mapper));
+        assertEquals(services.length, json.length);
+        assertEquals(Set.of(Mode.CAR), mapper.readValue(new String(json[0], StandardCharsets.UTF_8), MobilityService.class).getModes());
+    }
+
+    @Test
+    public void entriesAreAListOfServicesTest() {
+        var entries = registry.getSnapshot().getEntries();
+        var body = ServiceEntries.of(entries);
+
+        // Message converters other than the one for the cached JSON only see the services.
+        assertEquals(entries.size(), body.size());
+
+        for (int i = 0; i < entries.size(); i++) {
+            assertSame(entries.get(i).getService(), body.get(i));
+        }
+    }
+
+    @Test
+    public void snapshotIsImmutableTest() {
+        var before = registry.getSnapshot();
+
+        registry.register(createService("legendary-service-3", Mode.BUS));
+        registry.delete("legendary-service-1");
+
+        var after = registry.getSnapshot();
+
+        assertEquals(services.length, before.size());
+        assertEquals(services.length, after.size());
+        assertTrue(after.getVersion() > before.getVersion());
+        assertEquals(after.getVersion(), registry.getVersion());
+        assertTrue(before.getServices().contains(services[0]));
+        assertFalse(after.getServices().contains(services[0]));
+        assertEquals("legendary-service-3", after.get(after.size() - 1).getId());
+
+        registry.registerAll(List.of(
+                createService("legendary-service-4", Mode.TRAM),
+                createService("legendary-service-5", Mode.TRAM)
+        ));
+
+        assertEquals(after.getVersion() + 1, registry.getVersion());
+        assertEquals(services.length + 2, registry.getAll().size());
+    }
+
+    @Test
+    public void changeLogTest() {
+        // Asking for a future sequence returns the latest sequence.
+        var sequence = registry.getSequence();
+
+        registry.register(createService("legendary-service-3", Mode.BUS));
+        registry.setActive("legendary-service-3", false);
+        registry.setActive("legendary-service-3", false);
+        registry.update("legendary-service-3", createService("legendary-service-3", Mode.TRAM));
+        registry.delete("legendary-service-3");
+
+        var feed = registry.getChangesSince(sequence);
+
+        assertFalse(feed.isResyncRequired());
+        assertEquals(sequence + 5, feed.getSequence());
+        assertEquals(List.of(
+                ServiceChange.Type.REGISTERED,
+                ServiceChange.Type.DEACTIVATED,
+                ServiceChange.Type.ACTIVATED,
+                ServiceChange.Type.UPDATED,
+                ServiceChange.Type.DELETED
+        ), feed.getChanges().stream().map(ServiceChange::getType).collect(toList()));
+        assertEquals(Set.of(Mode.TRAM), feed.getChanges().get(3).getService().getModes());
+
+        assertTrue(registry.getChangesSince(feed.getSequence()).getChanges().isEmpty());
+        assertEquals(registry.getSequence(), feed.getSequence());
+        assertEquals(registry.getEpoch(), feed.getEpoch());
+
+        // Sequence numbers of another epoch require a resync, those of the current epoch do not.
+        assertFalse(registry.getChangesSince(feed.getEpoch(), sequence).isResyncRequired());
+        assertTrue(registry.getChangesSince(feed.getEpoch() - 1, sequence).isResyncRequired());
+        assertTrue(registry.getChangesSince(feed.getEpoch() - 1, sequence).getChanges().isEmpty());
+
+        // Falling off the bounded log requires a resync.
+        var many = new ArrayList<MobilityService>();
+        for (int i = 0; i < 5000; i++) {
+            many.add(createService("many-" + i, Mode.CAR));
+        }
+        registry.registerAll(many);
+
+        assertTrue(registry.getChangesSince(sequence).isResyncRequired());
+    }
+
+    @Test(timeout = 10000)
+    public void flipDuringRegistrationIsRecordedTest() throws Exception {
+        var sequence = registry.getSequence();
+        var flipped = new AtomicBoolean();
+        var flipper = new Thread[1];
+
+        // Flips a service while registerAll holds the write lock, i.e. before the new snapshot is built.
+        Consumer<ServiceChange> listener = change -> {
+            if (change.getType() == ServiceChange.Type.REGISTERED && flipped.compareAndSet(false, true)) {
+                flipper[0] = new Thread(() -> registry.setActive("legendary-service-1", false));
+                flipper[0].start();
+
+                while (registry.isActive("legendary-service-1")) {
+                    Thread.onSpinWait();
+                }
+            }
+        };
+
+        registry.addChangeListener(listener);
+
+        try {
+            registry.registerAll(List.of(createService("legendary-service-3", Mode.BUS)));
+        } finally {
+            registry.removeChangeListener(listener);
+        }
+
+        flipper[0].join();
+
+        var types = registry.getChangesSince(sequence).getChanges().stream()
+                .filter(c -> c.getServiceId().equals("legendary-service-1"))
+                .map(ServiceChange::getType)
+                .collect(toList());
+
+        assertEquals(List.of(ServiceChange.Type.DEACTIVATED), types);
+        assertFalse(registry.streamAll(true).anyMatch(s -> s.getId().equals("legendary-service-1")));
+    }
+
+    @Test
+    public void activityStateTransitionTest() {
+        var state = registry.getServiceState("legendary-service-1");
+        var before = state.getLastUpdateMillis();
+
+        assertTrue(state.isActive());
+        assertFalse(state.trySetActive(true));
+        assertTrue(state.trySetActive(false));
+        assertFalse(state.isActive());
+        assertFalse(state.trySetActive(false));
+        assertSame(state, state.markActive());
+        assertTrue(state.isActive());
+
+        assertTrue(state.getLastUpdateMillis() >= before);
+        assertEquals(state.getLastUpdateMillis(), state.getLastUpdate().toEpochMilli());
+        assertFalse(state.isDueForChecking(60000));
+        assertTrue(state.isDueForChecking(-1));
+    }
+
+    @Test
+    public void refreshTest() {
+        var entry = registry.getEntryById("legendary-service-1");
+        var version = registry.getVersion();
+        var sequence = registry.getSequence();
+
+        // An equal service info changes nothing at all.
+        assertFalse(registry.refresh(entry, createService("legendary-service-1", Mode.CAR, "Legendary Service 1")));
+        assertEquals(version, registry.getVersion());
+        assertTrue(registry.getChangesSince(sequence).getChanges().isEmpty());
+
+        var refreshed = createService("legendary-service-1", Mode.BUS, "Legendary Service 1");
+        assertTrue(registry.refresh(entry, refreshed));
+        assertEquals(version + 1, registry.getVersion());
+        assertSame(refreshed, registry.getById("legendary-service-1"));
+        assertEquals(ServiceChange.Type.UPDATED, registry.getChangesSince(sequence).getChanges().get(0).getType());
+
+        // Entries that are no longer registered are left alone.
+        registry.delete("legendary-service-1");
+        assertFalse(registry.refresh(entry, createService("legendary-service-1", Mode.TRAM, "Legendary Service 1")));
+    }
+
+    @Test(timeout = 60000)
+    public void concurrentRegistrationsAreNotLostTest() throws Exception {
+        final int writers = 8;
+        final int servicesPerWriter = 500;
+
+        var running = new AtomicBoolean(true);
+        var start = new CountDownLatch(1);
+        var executor = Executors.newFixedThreadPool(writers + 2);
+
+        try {
+            var tasks = new ArrayList<Future<?>>();
+
+            for (int w = 0; w < writers; w++) {
+                final int writer = w;
+                tasks.add(executor.submit((Callable<Void>) () -> {
+                    start.await();
+                    for (int i = 0; i < servicesPerWriter; i++) {
+                        var id = "stress-" + writer + "-" + i;
+                        registry.register(createService(id, Mode.CAR));
+                        registry.update(id, createService(id, Mode.BICYCLE));
+                        registry.setActive(id, i % 2 == 0);
+
+                        // Every second service of this writer is deleted again.
+                        if (i % 2 == 1) {
+                            registry.delete(id);
+                        }
+                    }
+                    return null;
+                }));
+            }
+
+            // Readers that permanently iterate the registry while it is mutated.
+            var readers = new ArrayList<Future<?>>();
+
+            for (int r = 0; r < 2; r++) {
+                readers.add(executor.submit((Callable<Void>) () -> {
+                    start.await();
+                    while (running.get()) {
+                        registry.streamAll(true).forEach(s -> assertNotNull(s.getId()));
+                        registry.streamEntries().forEach(e -> assertNotNull(e.getState()));
+                        registry.getAll().size();
+                    }
+                    return null;
+                }));
+            }
+
+            start.countDown();
+
+            for (var task : tasks) {
+                task.get();
+            }
+
+            running.set(false);
+
+            for (var reader : readers) {
+                reader.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // The two regular services from prepare() plus every kept stress service.
+        assertEquals(services.length + writers * servicesPerWriter / 2, registry.getAll().size());
+
+        for (int w = 0; w < writers; w++) {
+            for (int i = 0; i < servicesPerWriter; i += 2) {
+                var id = "stress-" + w + "-" + i;
+                var service = registry.getById(id);
+                assertEquals(Set.of(Mode.BICYCLE), service.getModes());
+                assertNotNull(registry.getServiceState(id));
+                assertTrue(registry.isActive(id));
+            }
+        }
+    }
+
+    private static MobilityService createService(String id, Mode mode) {
+        return createService(id, mode, id);
+    }
+
+    private static MobilityService createService(String id, Mode mode, String name) {
+        return new MobilityService(
+                id,
+                "Legendary Services GmbH",
+                null,
+                name,
+                "http://" + id + "/",
+                "Entire Spacetime-continuum",
+                Set.of(mode),
+                EnumSet.allOf(API.class),
+                null
+        );
+    }
 }
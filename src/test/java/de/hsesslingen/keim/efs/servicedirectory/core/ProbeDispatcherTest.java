@@ -0,0 +1,101 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.servicedirectory.core;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class ProbeDispatcherTest {
+
+    @Test
+    public void hostOfTest() {
+        assertEquals("provider.example", ProbeDispatcher.hostOf("http://Provider.example/api/"));
+        assertEquals("provider.example:8080", ProbeDispatcher.hostOf("https://provider.example:8080/x"));
+        assertEquals("not a url", ProbeDispatcher.hostOf("not a url"));
+        assertEquals("", ProbeDispatcher.hostOf(null));
+    }
+
+    @Test(timeout = 10000)
+    public void limitsAreRespectedTest() throws Exception {
+        var executor = Executors.newFixedThreadPool(4);
+
+        try {
+            var dispatcher = new ProbeDispatcher(executor, 4, 2);
+            var release = new CountDownLatch(1);
+
+            var inFlight = new AtomicInteger();
+            var maxInFlight = new AtomicInteger();
+            var inFlightPerHost = new ConcurrentHashMap<String, AtomicInteger>();
+            var maxInFlightPerHost = new ConcurrentHashMap<String, Integer>();
+
+            var futures = new ArrayList<CompletableFuture<String>>();
+
+            for (int i = 0; i < 30; i++) {
+                // Most services share one host.
+                var host = i % 3 == 0 ? "host-" + i : "shared-host";
+
+                futures.add(dispatcher.submit(host, () -> {
+                    maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    var count = inFlightPerHost.computeIfAbsent(host, h -> new AtomicInteger()).incrementAndGet();
+                    maxInFlightPerHost.merge(host, count, Math::max);
+
+                    try {
+                        release.await();
+                    } catch (InterruptedException ex) {
+                        throw new IllegalStateException(ex);
+                    }
+
+                    inFlightPerHost.get(host).decrementAndGet();
+                    inFlight.decrementAndGet();
+                    return host;
+                }));
+            }
+
+            var statistics = dispatcher.getStatistics();
+            assertEquals(4, statistics.getInFlight());
+            assertEquals(26, statistics.getQueued());
+            assertTrue(statistics.getBackloggedHosts() > 1);
+
+            release.countDown();
+
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals(i % 3 == 0 ? "host-" + i : "shared-host", futures.get(i).get(5, TimeUnit.SECONDS));
+            }
+
+            assertTrue(maxInFlight.get() <= 4);
+            assertTrue(maxInFlightPerHost.values().stream().allMatch(max -> max <= 2));
+            assertEquals(0, dispatcher.getStatistics().getQueued());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
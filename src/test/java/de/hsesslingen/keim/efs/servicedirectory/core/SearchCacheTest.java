@@ -0,0 +1,168 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.servicedirectory.core;
+
+import de.hsesslingen.keim.efs.mobility.service.MobilityService;
+import de.hsesslingen.keim.efs.mobility.service.MobilityService.API;
+import de.hsesslingen.keim.efs.mobility.service.Mode;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class SearchCacheTest {
+
+    private static SearchQuery query(String id) {
+        return new SearchQuery(null, null, true, Set.of(id));
+    }
+
+    @Test
+    public void versionTaggingTest() {
+        var cache = new SearchCache(8);
+
+        var result = cache.put(query("a"), 1, List.of());
+
+        assertSame(result, cache.get(query("A"), 1));
+        assertNull(cache.get(query("a"), 2));
+        assertEquals(1, cache.getStatistics().getHits());
+        assertEquals(1, cache.getStatistics().getMisses());
+    }
+
+    @Test
+    public void evictionTest() {
+        var cache = new SearchCache(8);
+
+        for (int i = 0; i < 16; i++) {
+            cache.put(query("old-" + i), 1, List.of());
+        }
+
+        for (int i = 0; i < 16; i++) {
+            cache.put(query("new-" + i), 2, List.of());
+        }
+
+        var statistics = cache.getStatistics();
+        assertTrue(statistics.getSize() <= 8);
+        assertEquals(32 - statistics.getSize(), statistics.getEvictions());
+
+        // The most recent result survives.
+        assertNotNull(cache.get(query("new-15"), 2));
+    }
+
+    @Test
+    public void hitsAreSpreadToEntriesTest() {
+        var cache = new SearchCache(8);
+        var entry = new ServiceEntry(new MobilityService(
+                "a",
+                "Cached Services GmbH",
+                null,
+                "a",
+                "http://a/",
+                "Entire Spacetime-continuum",
+                Set.of(Mode.CAR),
+                EnumSet.allOf(API.class),
+                null
+        ));
+        var result = cache.put(query("a"), 1, List.of(entry));
+
+        cache.hit(result);
+        cache.hit(result);
+        assertEquals(0, entry.getDemand().getScore(0, Long.MAX_VALUE), 0);
+
+        cache.spreadHits();
+        assertEquals(2, entry.getDemand().getScore(0, Long.MAX_VALUE), 0);
+
+        // Hits of a replaced result are not lost, neither those counted before nor after the replacement.
+        cache.hit(result);
+        var newer = cache.put(query("a"), 2, List.of(entry));
+        assertEquals(3, entry.getDemand().getScore(0, Long.MAX_VALUE), 0);
+        cache.hit(result);
+        assertEquals(4, entry.getDemand().getScore(0, Long.MAX_VALUE), 0);
+
+        // An outdated result does not replace a newer one, the cached one is returned instead.
+        assertSame(newer, cache.put(query("a"), 1, List.of(entry)));
+        cache.hit(newer);
+        cache.spreadHits();
+        assertEquals(5, entry.getDemand().getScore(0, Long.MAX_VALUE), 0);
+
+        // Without caching, every hit is spread at once.
+        var uncached = new SearchCache(0);
+        uncached.hit(uncached.put(query("a"), 1, List.of(entry)));
+        assertEquals(6, entry.getDemand().getScore(0, Long.MAX_VALUE), 0);
+    }
+
+    @Test(timeout = 30000)
+    public void concurrentMissesAreCoalescedTest() throws Exception {
+        final int callers = 8;
+
+        var cache = new SearchCache(8);
+        var computations = new AtomicInteger();
+        var start = new CountDownLatch(1);
+        var executor = Executors.newFixedThreadPool(callers);
+
+        try {
+            var futures = new ArrayList<Future<SearchCache.Result>>();
+
+            for (int i = 0; i < callers; i++) {
+                futures.add(executor.submit((Callable<SearchCache.Result>) () -> {
+                    start.await();
+                    return cache.getOrCompute(query("a"), 1, () -> {
+                        computations.incrementAndGet();
+                        try {
+                            Thread.sleep(200);
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return List.of();
+                    });
+                }));
+            }
+
+            start.countDown();
+
+            var first = futures.get(0).get();
+
+            for (var future : futures) {
+                assertSame(first, future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Callers either waited for the single computation or found its cached result.
+        var statistics = cache.getStatistics();
+        assertEquals(1, computations.get());
+        assertEquals(callers - 1, statistics.getCoalesced() + statistics.getHits());
+    }
+}